@@ -5,6 +5,8 @@ include $(CLEAR_VARS)
 include ../OpenCV-2.4.8-android-sdk/sdk/native/jni/OpenCV.mk
 
 LOCAL_MODULE    := mixed_sample
+LOCAL_SRC_FILES := hough_kernels.cpp
+LOCAL_CPPFLAGS  += -O3 -ffp-contract=off
 LOCAL_LDLIBS +=  -llog -ldl
 
 include $(BUILD_SHARED_LIBRARY)
@@ -0,0 +1,255 @@
+/*
+ * Native voting and peak kernels of the Java hough transforms, see cz.muni.fi.hough.transform.NativeKernels.
+ * Every kernel computes exactly the same votes as its Java counterpart, so it has to be built without
+ * contraction of multiplications and additions (-ffp-contract=off).
+ *
+ * @author Jakub Medvecky-Heretik
+ */
+#include <jni.h>
+#include <algorithm>
+#include <vector>
+
+#define NATIVE(name) Java_cz_muni_fi_hough_transform_NativeKernels_##name
+
+//Version of native API, has to be the same as NativeKernels.VERSION
+static const jint VERSION = 3;
+
+//Copies packed coordinates of points [from, to) out of the Java array
+static void copyPoints(JNIEnv* env, jintArray points, jint from, jint to, std::vector<jint>& buffer) {
+    buffer.resize(to > from ? to - from : 0);
+    if (!buffer.empty()) {
+        env->GetIntArrayRegion(points, from, to - from, &buffer[0]);
+    }
+}
+
+extern "C" {
+
+JNIEXPORT jint JNICALL NATIVE(version)(JNIEnv* env, jclass clazz) {
+    return VERSION;
+}
+
+JNIEXPORT void JNICALL NATIVE(voteLines)(JNIEnv* env, jclass clazz, jintArray points, jint from, jint to,
+        jobjectArray array, jint fromTheta, jint toTheta, jdoubleArray sinCache, jdoubleArray cosCache,
+        jfloat centerX, jfloat centerY, jint houghHeight, jint rhoFrom, jint rhoTo, jint delta) {
+    std::vector<jint> xy;
+    copyPoints(env, points, from, to, xy);
+    if (xy.empty() || fromTheta >= toTheta) {
+        return;
+    }
+    std::vector<jdouble> sinT(toTheta), cosT(toTheta);
+    env->GetDoubleArrayRegion(sinCache, 0, toTheta, &sinT[0]);
+    env->GetDoubleArrayRegion(cosCache, 0, toTheta, &cosT[0]);
+
+    //Point coordinates relative to the centre, in float as in Java
+    size_t size = xy.size();
+    std::vector<jfloat> xs(size), ys(size);
+    for (size_t i = 0; i < size; i++) {
+        xs[i] = (jfloat) (xy[i] & 0xffff) - centerX;
+        ys[i] = (jfloat) ((unsigned int) xy[i] >> 16) - centerY;
+    }
+
+    //Theta by theta, so only one row is pinned at a time and it stays in cache
+    for (jint t = fromTheta; t < toTheta; t++) {
+        jintArray rowArray = (jintArray) env->GetObjectArrayElement(array, t);
+        if (rowArray == NULL) {
+            continue;
+        }
+        jint* row = (jint*) env->GetPrimitiveArrayCritical(rowArray, NULL);
+        jdouble c = cosT[t], s = sinT[t];
+        for (size_t i = 0; i < size; i++) {
+            jint r = (jint) (xs[i] * c + ys[i] * s) + houghHeight;
+            if (r >= rhoFrom && r < rhoTo) {
+                row[r - rhoFrom] += delta;
+            }
+        }
+        env->ReleasePrimitiveArrayCritical(rowArray, row, 0);
+        env->DeleteLocalRef(rowArray);
+    }
+}
+
+JNIEXPORT void JNICALL NATIVE(voteLinesFixed)(JNIEnv* env, jclass clazz, jintArray points, jint from, jint to,
+        jobjectArray array, jint fromTheta, jint toTheta, jintArray xCos, jintArray ySin, jint thetas, jint shift,
+        jint rhoFrom, jint rhoTo, jint delta) {
+    std::vector<jint> xy;
+    copyPoints(env, points, from, to, xy);
+    if (xy.empty() || fromTheta >= toTheta) {
+        return;
+    }
+    size_t size = xy.size();
+    jint window = toTheta - fromTheta;
+    jint maxX = 0, maxY = 0;
+    for (size_t i = 0; i < size; i++) {
+        maxX = std::max(maxX, xy[i] & 0xffff);
+        maxY = std::max(maxY, (jint) ((unsigned int) xy[i] >> 16));
+    }
+
+    //Thetas [fromTheta, toTheta) of the table rows of columns and rows with points,
+    //copied once instead of pinning both tables for every theta
+    std::vector<jint> xTable((size_t) (maxX + 1) * window), yTable((size_t) (maxY + 1) * window);
+    std::vector<char> xCopied(maxX + 1), yCopied(maxY + 1);
+    std::vector<jint> xOffsets(size), yOffsets(size);
+    for (size_t i = 0; i < size; i++) {
+        jint x = xy[i] & 0xffff, y = (unsigned int) xy[i] >> 16;
+        if (!xCopied[x]) {
+            env->GetIntArrayRegion(xCos, x * thetas + fromTheta, window, &xTable[(size_t) x * window]);
+            xCopied[x] = 1;
+        }
+        if (!yCopied[y]) {
+            env->GetIntArrayRegion(ySin, y * thetas + fromTheta, window, &yTable[(size_t) y * window]);
+            yCopied[y] = 1;
+        }
+        xOffsets[i] = x * window;
+        yOffsets[i] = y * window;
+    }
+
+    for (jint t = fromTheta; t < toTheta; t++) {
+        jintArray rowArray = (jintArray) env->GetObjectArrayElement(array, t);
+        if (rowArray == NULL) {
+            continue;
+        }
+        jint k = t - fromTheta;
+        jint* row = (jint*) env->GetPrimitiveArrayCritical(rowArray, NULL);
+        for (size_t i = 0; i < size; i++) {
+            jint r = (xTable[xOffsets[i] + k] + yTable[yOffsets[i] + k]) >> shift;
+            if (r >= rhoFrom && r < rhoTo) {
+                row[r - rhoFrom] += delta;
+            }
+        }
+        env->ReleasePrimitiveArrayCritical(rowArray, row, 0);
+        env->DeleteLocalRef(rowArray);
+    }
+}
+
+JNIEXPORT void JNICALL NATIVE(voteCircles)(JNIEnv* env, jclass clazz, jintArray points, jint from, jint to,
+        jintArray array, jint width, jint height, jintArray dx, jintArray dy, jint maxX, jint maxY,
+        jint fromB, jint toB) {
+    if (fromB >= toB) {
+        return;
+    }
+    std::vector<jint> xy;
+    copyPoints(env, points, from, to, xy);
+    jsize size = env->GetArrayLength(dx);
+    std::vector<jint> dxs(size), dys(size);
+    if (size > 0) {
+        env->GetIntArrayRegion(dx, 0, size, &dxs[0]);
+        env->GetIntArrayRegion(dy, 0, size, &dys[0]);
+    }
+
+    //Votes go into a band [a][b - fromB] of this call only, other threads write other bands of the same array
+    jint bandHeight = toB - fromB;
+    std::vector<jint> band((size_t) width * bandHeight, 0);
+    for (size_t i = 0; i < xy.size(); i++) {
+        jint x = xy[i] & 0xffff;
+        jint y = (unsigned int) xy[i] >> 16;
+        if (x >= maxX || y >= maxY) {
+            continue;
+        }
+        for (jsize k = 0; k < size; k++) {
+            jint a = x - dxs[k];
+            jint b = y - dys[k];
+            if (a >= 0 && a < width && b >= fromB && b < toB) {
+                band[(size_t) a * bandHeight + b - fromB]++;
+            }
+        }
+    }
+
+    //Only the band is written back, the whole of it, so the array does not have to be cleared before
+    for (jint a = 0; a < width; a++) {
+        env->SetIntArrayRegion(array, a * height + fromB, bandHeight, &band[(size_t) a * bandHeight]);
+    }
+}
+
+JNIEXPORT jint JNICALL NATIVE(findPeaks)(JNIEnv* env, jclass clazz, jobjectArray array, jint threshold, jint rowSize,
+        jint columnSize, jboolean wrapRows, jintArray peaks) {
+    jsize rowCount = env->GetArrayLength(array);
+
+    //Rows are copied into one buffer, neighbourhoods span several rows
+    std::vector<bool> present(rowCount, false);
+    jsize columnCount = 0;
+    for (jsize t = 0; t < rowCount; t++) {
+        jintArray rowArray = (jintArray) env->GetObjectArrayElement(array, t);
+        if (rowArray != NULL) {
+            columnCount = env->GetArrayLength(rowArray);
+            env->DeleteLocalRef(rowArray);
+            break;
+        }
+    }
+    std::vector<jint> values((size_t) rowCount * columnCount);
+    for (jsize t = 0; t < rowCount && columnCount > 0; t++) {
+        jintArray rowArray = (jintArray) env->GetObjectArrayElement(array, t);
+        if (rowArray != NULL) {
+            env->GetIntArrayRegion(rowArray, 0, columnCount, &values[(size_t) t * columnCount]);
+            present[t] = true;
+            env->DeleteLocalRef(rowArray);
+        }
+    }
+
+    //Maximum over columns of every row
+    std::vector<jint> rowMaxima(values.size());
+    for (jsize t = 0; t < rowCount; t++) {
+        if (!present[t]) {
+            continue;
+        }
+        const jint* src = &values[(size_t) t * columnCount];
+        jint* dst = &rowMaxima[(size_t) t * columnCount];
+        for (jsize c = 0; c < columnCount; c++) {
+            jsize first = c - columnSize < 0 ? 0 : c - columnSize;
+            jsize last = c + columnSize > columnCount - 1 ? columnCount - 1 : c + columnSize;
+            jint max = src[first];
+            for (jsize j = first + 1; j <= last; j++) {
+                if (src[j] > max) {
+                    max = src[j];
+                }
+            }
+            dst[c] = max;
+        }
+    }
+
+    //Maximum over rows and comparison with the array
+    jsize capacity = env->GetArrayLength(peaks) / 2;
+    std::vector<jint> found;
+    std::vector<jint> maxima(columnCount);
+    jint count = 0;
+    for (jsize t = 0; t < rowCount; t++) {
+        if (!present[t]) {
+            continue;
+        }
+        const jint* own = &rowMaxima[(size_t) t * columnCount];
+        maxima.assign(own, own + columnCount);
+        for (jint dt = -rowSize; dt <= rowSize; dt++) {
+            jint neighbour = t + dt;
+            if (wrapRows) {
+                neighbour = (neighbour % rowCount + rowCount) % rowCount;
+            } else if (neighbour < 0 || neighbour >= rowCount) {
+                continue;
+            }
+            if (!present[neighbour]) {
+                continue;
+            }
+            const jint* other = &rowMaxima[(size_t) neighbour * columnCount];
+            for (jsize c = 0; c < columnCount; c++) {
+                if (other[c] > maxima[c]) {
+                    maxima[c] = other[c];
+                }
+            }
+        }
+
+        const jint* row = &values[(size_t) t * columnCount];
+        for (jsize c = 0; c < columnCount; c++) {
+            if (row[c] > threshold && row[c] == maxima[c]) {
+                if (count < capacity) {
+                    found.push_back(t);
+                    found.push_back(c);
+                }
+                count++;
+            }
+        }
+    }
+
+    if (!found.empty()) {
+        env->SetIntArrayRegion(peaks, 0, (jsize) found.size(), &found[0]);
+    }
+    return count;
+}
+
+}
@@ -1,13 +1,28 @@
 package cz.muni.fi.hough;
 
 import cz.muni.fi.hough.R;
+import cz.muni.fi.hough.frame.FramePipeline;
+import cz.muni.fi.hough.frame.LatestFrameWorker;
 import cz.muni.fi.hough.line.HoughLine;
 import cz.muni.fi.hough.line.Line;
+import cz.muni.fi.hough.line.LineRenderer;
+import cz.muni.fi.hough.line.LineSet;
+import cz.muni.fi.hough.line.VanishingPoint;
 import cz.muni.fi.hough.pref.PreferencesActivity;
+import cz.muni.fi.hough.transform.EdgePointSet;
+import cz.muni.fi.hough.transform.HierarchicalHoughLines;
 import cz.muni.fi.hough.transform.HoughCircles2D;
 import cz.muni.fi.hough.transform.HoughCircles3D;
+import cz.muni.fi.hough.transform.HoughCirclesGradient;
+import cz.muni.fi.hough.transform.HoughLineSegments;
 import cz.muni.fi.hough.transform.HoughLineTransform;
 import cz.muni.fi.hough.transform.HoughLines;
+import cz.muni.fi.hough.transform.LaneTracker;
+import cz.muni.fi.hough.transform.LineRegion;
+import cz.muni.fi.hough.transform.NativeKernels;
+import cz.muni.fi.hough.transform.PyramidHoughCircles;
+import cz.muni.fi.hough.transform.RandomizedHoughCircles;
+import cz.muni.fi.hough.transform.VotingPool;
 
 import java.util.Vector;
 
@@ -15,7 +30,6 @@ import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
-import org.opencv.android.Utils;
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
@@ -30,7 +44,6 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.graphics.Bitmap;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
@@ -75,10 +88,51 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
     //Hough transform for detecting straight lines provided by OpenCV,
     //drawing out only 2 road lanes which meet at estimate horizon
     private static final int VIEW_MODE_OPENCV_LINES_HORIZON = 9;
+
+    //Probabilistic Java implementation of Hough transform for detecting straight lines,
+    //which stops after enough lines are found
+    private static final int VIEW_MODE_JAVA_LINES_PROBABILISTIC = 10;
+
+    //Progressive probabilistic Java implementation of Hough transform for detecting line segments
+    private static final int VIEW_MODE_JAVA_LINE_SEGMENTS = 11;
+
+    //Coarse-to-fine Java implementation of Hough transform for detecting straight lines
+    private static final int VIEW_MODE_JAVA_LINES_HIERARCHICAL = 12;
+
+    //Java Hough transform drawing out 2 road lanes which meet at estimate horizon,
+    //lanes are tracked between frames and searched for only near their predicted position
+    private static final int VIEW_MODE_JAVA_LANES_TRACKING = 13;
+
+    //Two-stage Java implementation of Hough transform for detecting circles,
+    //centers are voted for along gradient direction of edges and radius is estimated afterwards
+    private static final int VIEW_MODE_JAVA_CIRCLES_GRADIENT = 14;
+
+    //Randomized Java implementation of Hough transform for detecting circles,
+    //circles through sampled triples of edge points vote into a sparse accumulator
+    private static final int VIEW_MODE_JAVA_CIRCLES_RANDOMIZED = 15;
+
+    //Coarse-to-fine Java implementation of Hough transform for detecting circles,
+    //candidates are detected in downscaled image and refined in full resolution
+    private static final int VIEW_MODE_JAVA_CIRCLES_PYRAMID = 16;
     
     //Application settings
     private static final int SETTINGS = 10;
 
+    //Frames are processed in the camera callback
+    private static final int PROCESSING_SYNC = 0;
+
+    //Only the newest frame is processed on a worker thread, the last finished detection is drawn over the preview
+    private static final int PROCESSING_LATEST = 1;
+
+    //Edge detection and detection run in a pipeline of threads, each on a different frame
+    private static final int PROCESSING_PIPELINE = 2;
+
+    //Lines closer than this many degrees to the horizon direction are not lanes
+    private static final int LANE_ANGLE_MARGIN = 20;
+
+    //Weight of the horizon of current frame in its running average
+    private static final double HORIZON_WEIGHT = 0.2;
+
     //Current screen orientation
     public static int orientation;
 
@@ -88,8 +142,8 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
     //Width of image frame
     private int width;
 
-    //Current image processing mode
-    private int viewMode;
+    //Current image processing mode, also read by the worker thread
+    private volatile int viewMode;
 
     //Working matrices
     private Mat matRgba;
@@ -97,19 +151,78 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
     private Mat matEdges;
     private Mat lines;
     private Mat circles;
-    private Bitmap edgeBitmap;
+
+    //Edge points of current frame shared by Java transforms
+    private EdgePointSet edgePoints;
+
+    //Hough line transform reused between frames of the same size
+    private HoughLineTransform houghLineTransform;
+
+    //Line segment detector voting in the same Hough line transform
+    private HoughLineSegments houghLineSegments;
+
+    //Coarse-to-fine Hough line transform reused between frames of the same size
+    private HierarchicalHoughLines hierarchicalHoughLines;
+
+    //Tracker of road lanes between frames of the same size
+    private LaneTracker laneTracker;
+
+    //Threads used for voting by Java transforms
+    private VotingPool votingPool;
+
+    //Vote and search for peaks with native kernels in Java transforms
+    private boolean useNative;
+
+    //Size of cells of hough arrays in Java transforms (see Accumulator)
+    private int accumulatorCell;
+
+    //How detection modes process frames, PROCESSING_SYNC, PROCESSING_LATEST or PROCESSING_PIPELINE
+    private int frameProcessing;
+
+    //Worker processing frames asynchronously, null unless frames are processed with PROCESSING_LATEST
+    private LatestFrameWorker frameWorker;
+
+    //Stages processing frames on their own threads, null unless frames are processed with PROCESSING_PIPELINE
+    private FramePipeline framePipeline;
 
     private CameraBridgeViewBase openCvCameraView;
 
     //How many votes in hough space should indicate line
     private int lineThreshold;
 
+    //How many degrees around gradient direction should edge point vote for, 0 for all angles
+    private int lineGradientWindow;
+
     //Minimum line segment length
     private int minLineSize;
 
     //Maximum length of gap between line segments
     private int maxLineGap;
 
+    //Vote with fixed point integer additions in Java line detection
+    private boolean lineFixedPoint;
+
+    //Vote only for lines which can be road lanes in the segmented part of the image
+    private boolean lineLaneRegion;
+
+    //Update votes of the previous frame only for changed edge pixels in Java line detection
+    private boolean lineIncremental;
+
+    //Maximum number of lines found by Java line detection
+    private int maxLineCount;
+
+    //Strongest lines of current frame found by Java line detection
+    private LineSet lineSet;
+
+    //Draws lines found by Java line detection in one bulk write
+    private LineRenderer lineRenderer;
+
+    //Percentage of edge points processed by probabilistic detection
+    private int linePointFraction;
+
+    //Flat array the native circle kernel voted into for the last frame, reused for the next one
+    private int[] circleVotes;
+
     //Smallest and biggest radius of circles to detect 
     //if equal - 2D hough space will be used which leads to better performance, otherwise 3D
     private int minRadius, maxRadius;
@@ -120,6 +233,15 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
     //How many votes in hough space should indicate circle
     private int circleTreshold;
 
+    //Most triples of edge points sampled by randomized circle detection
+    private int circleIterations;
+
+    //Randomized circle detection stops after this many circles are found
+    private int maxCircleCount;
+
+    //How many times smaller image circle candidates are detected in by pyramid circle detection
+    private int circlePyramidScale;
+
     //Left and right detected road lanes
     private Line leftLane;
     private Line rightLane;
@@ -135,6 +257,23 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
     private boolean isLeftHorizontal;
     private boolean isRightHorizontal;
 
+    //Estimate of the horizon from all detected lines
+    private VanishingPoint vanishingPoint;
+
+    //Running average of y coordinate of the horizon, NaN if it is not known
+    private double horizonY;
+
+    //First row of segmented part of landscape image in the horizon modes, it follows the horizon, read when a frame arrives
+    private volatile int segmentTop;
+
+    //View mode, orientation and first row of segmented part of the frame being detected, fixed for the whole frame
+    private int frameMode;
+    private int frameOrientation;
+    private int frameSegmentTop;
+
+    //Rho and theta of lines detected by OpenCV
+    private float[] lineBuffer = new float[64];
+
     /**
      * Load OpenCV Manager
      */
@@ -144,6 +283,9 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
             switch (status) {
                 case LoaderCallbackInterface.SUCCESS: {
                     Log.i(TAG, "OpenCV library loaded successfully");
+
+                    //Native kernels are linked against OpenCV
+                    Log.i(TAG, "Native kernels available:" + NativeKernels.load());
                     openCvCameraView.enableView();
                 }
                 break;
@@ -166,7 +308,7 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         minRadius = 40;
         maxRadius = 40;
         distanceRadius = 25;
-        circleTreshold = 45;
+        circleTreshold = 120;
         orientation = 1;
     }
 
@@ -224,7 +366,13 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         matRgba = new Mat(height, width, CvType.CV_8UC4);
         matGray = new Mat(height, width, CvType.CV_8UC1);
         matEdges = new Mat(height, width, CvType.CV_8UC1);
-        edgeBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        edgePoints = new EdgePointSet();
+        houghLineTransform = new HoughLineTransform(width, height);
+        houghLineSegments = new HoughLineSegments(houghLineTransform, width, height);
+        hierarchicalHoughLines = new HierarchicalHoughLines(width, height);
+        laneTracker = new LaneTracker(houghLineTransform, width, height);
+        lineSet = new LineSet(maxLineCount);
+        lineRenderer = new LineRenderer(width, height);
 
         leftLane = new Line(0, height, width, 0);
         rightLane = new Line(width, height, 0, 0);
@@ -239,6 +387,9 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
 
         isLeftHorizontal = true;
         isRightHorizontal = true;
+
+        vanishingPoint = new VanishingPoint(width, height);
+        resetHorizon();
     }
 
     /**
@@ -274,15 +425,49 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
 
         lineThreshold = Integer.parseInt(sharedPrefs.getString("prefLineThresh", "70"));
+        lineGradientWindow = Integer.parseInt(sharedPrefs.getString("prefLineGradientWindow", "0"));
         minLineSize = Integer.parseInt(sharedPrefs.getString("prefLineMinSize", "100"));
         maxLineGap = Integer.parseInt(sharedPrefs.getString("prefLineMaxGap", "100"));
+        lineFixedPoint = sharedPrefs.getBoolean("prefLineFixedPoint", false);
+        lineLaneRegion = sharedPrefs.getBoolean("prefLineLaneRegion", true);
+        lineIncremental = sharedPrefs.getBoolean("prefLineIncremental", false);
+        maxLineCount = Integer.parseInt(sharedPrefs.getString("prefLineMaxCount", "10"));
+        linePointFraction = Integer.parseInt(sharedPrefs.getString("prefLinePointFraction", "100"));
 
         minRadius = Integer.parseInt(sharedPrefs.getString("prefMinRadius", "40"));
         maxRadius = Integer.parseInt(sharedPrefs.getString("prefMaxRadius", "40"));
         distanceRadius = Integer.parseInt(sharedPrefs.getString("prefDistanceRadius", "25"));
-        circleTreshold = Integer.parseInt(sharedPrefs.getString("prefCircleThresh", "45"));
+
+        //Circle threshold used to be stored as prefCircleThresh when circles voted with 180 samples, stencils vote for every pixel
+        //of the circle and the default was raised from 45 to 120, so a stored value is scaled by the same ratio
+        if (sharedPrefs.contains("prefCircleThresh")) {
+            int oldThreshold = Integer.parseInt(sharedPrefs.getString("prefCircleThresh", "45"));
+            sharedPrefs.edit().putString("prefCircleVotes", String.valueOf(oldThreshold * 120 / 45)).remove("prefCircleThresh").commit();
+        }
+        circleTreshold = Integer.parseInt(sharedPrefs.getString("prefCircleVotes", "120"));
+        circleIterations = Integer.parseInt(sharedPrefs.getString("prefCircleIterations", "5000"));
+        maxCircleCount = Integer.parseInt(sharedPrefs.getString("prefCircleMaxCount", "10"));
+        circlePyramidScale = Integer.parseInt(sharedPrefs.getString("prefCirclePyramidScale", "2"));
+
+        useNative = sharedPrefs.getBoolean("prefNative", false);
+        accumulatorCell = Integer.parseInt(sharedPrefs.getString("prefAccumulatorCell", "2"));
+        frameProcessing = Integer.parseInt(sharedPrefs.getString("prefProcessing", "0"));
+
+        int threads = Integer.parseInt(sharedPrefs.getString("prefThreads", "1"));
+        if (votingPool == null || votingPool.getThreads() != threads) {
+            if (votingPool != null) {
+                votingPool.shutdown();
+            }
+            votingPool = new VotingPool(threads);
+        }
 
         viewMode = Integer.parseInt(sharedPrefs.getString("prefMode", "0"));
+
+        //Lanes tracked with old settings are searched for again
+        if (laneTracker != null) {
+            laneTracker.reset();
+        }
+        resetHorizon();
         final int mode = viewMode;
         switch (mode) {
             case VIEW_MODE_RGBA:
@@ -309,12 +494,33 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
             case VIEW_MODE_JAVA_LINES_NAIVE:
                 Log.i(TAG, "Java lines - naive");
                 break;
+            case VIEW_MODE_JAVA_LINES_PROBABILISTIC:
+                Log.i(TAG, "Java lines - probabilistic");
+                break;
+            case VIEW_MODE_JAVA_LINE_SEGMENTS:
+                Log.i(TAG, "Java line segments");
+                break;
+            case VIEW_MODE_JAVA_LINES_HIERARCHICAL:
+                Log.i(TAG, "Java lines - hierarchical");
+                break;
+            case VIEW_MODE_JAVA_LANES_TRACKING:
+                Log.i(TAG, "Java lanes with tracking");
+                break;
             case VIEW_MODE_OPENCV_CIRCLES:
                 Log.i(TAG, "OpenCV circles");
                 break;
             case VIEW_MODE_JAVA_CIRCLES_NAIVE:
                 Log.i(TAG, "Java circles - naive");
                 break;
+            case VIEW_MODE_JAVA_CIRCLES_GRADIENT:
+                Log.i(TAG, "Java circles - gradient");
+                break;
+            case VIEW_MODE_JAVA_CIRCLES_RANDOMIZED:
+                Log.i(TAG, "Java circles - randomized");
+                break;
+            case VIEW_MODE_JAVA_CIRCLES_PYRAMID:
+                Log.i(TAG, "Java circles - pyramid");
+                break;
         }
     }
 
@@ -325,6 +531,133 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
      */
     public Mat onCameraFrame(CvCameraViewFrame inputFrame) {
         final int mode = viewMode;
+
+        //Modes which only show the image are processed right away
+        boolean detection = mode != VIEW_MODE_RGBA && mode != VIEW_MODE_GRAY && mode != VIEW_MODE_SEGMENT;
+        int processing = detection ? frameProcessing : PROCESSING_SYNC;
+        if (processing != PROCESSING_LATEST) {
+            stopFrameWorker();
+        }
+        if (processing != PROCESSING_PIPELINE) {
+            stopFramePipeline();
+        }
+
+        switch (processing) {
+            case PROCESSING_LATEST:
+                return processLatestFrame(inputFrame);
+            case PROCESSING_PIPELINE:
+                return processPipelined(mode, inputFrame);
+            default:
+                return processFrame(mode, inputFrame);
+        }
+    }
+
+    /**
+     * Pass the frame to the worker, which processes only the newest one, and draw its last finished detection
+     *
+     * @param inputFrame
+     * @return image to show
+     */
+    private Mat processLatestFrame(CvCameraViewFrame inputFrame) {
+        if (frameWorker == null) {
+            frameWorker = new LatestFrameWorker(new LatestFrameWorker.Processor() {
+                @Override
+                public void process(CvCameraViewFrame frame) {
+                    processFrame(viewMode, frame);
+                }
+            });
+            frameWorker.start();
+        }
+
+        //Newest frame replaces the one waiting for the worker, the preview gets the last finished detection
+        Mat rgba = inputFrame.rgba();
+        frameWorker.submit(inputFrame.gray());
+        frameWorker.drawLatest(rgba);
+
+        if (frameWorker.getSubmitted() % 100 == 0) {
+            Log.i(TAG, "frames processed:" + frameWorker.getProcessed() + " dropped:" + frameWorker.getDropped());
+        }
+        return rgba;
+    }
+
+    /**
+     * Pass the frame to the first stage of the pipeline and draw detection of the newest frame which left it
+     *
+     * @param mode
+     * @param inputFrame
+     * @return image to show
+     */
+    private Mat processPipelined(int mode, CvCameraViewFrame inputFrame) {
+        if (framePipeline == null) {
+            framePipeline = new FramePipeline(new FramePipeline.Stage() {
+                @Override
+                public void process(FramePipeline.Job job) {
+                    job.edges.create(job.gray.rows(), job.gray.cols(), CvType.CV_8UC1);
+                    detectEdges(job.mode, job.orientation, job.segmentTop, job.gray, job.edges);
+                }
+            }, new FramePipeline.Stage() {
+                @Override
+                public void process(FramePipeline.Job job) {
+
+                    //Working matrices are used only by this stage, they are put back for frames processed in the callback
+                    Mat rgba = matRgba;
+                    Mat gray = matGray;
+                    Mat edges = matEdges;
+                    matRgba = job.overlay;
+                    matGray = job.gray;
+                    matEdges = job.edges;
+                    try {
+                        detect(job.mode, job.orientation, job.segmentTop);
+                    } finally {
+                        matRgba = rgba;
+                        matGray = gray;
+                        matEdges = edges;
+                    }
+                }
+            });
+            framePipeline.start();
+        }
+
+        Mat rgba = inputFrame.rgba();
+        framePipeline.submit(inputFrame.gray(), mode, orientation, segmentTopFor(mode));
+        framePipeline.drawLatest(rgba);
+
+        if (framePipeline.getSubmitted() % 100 == 0) {
+            Log.i(TAG, "frames processed:" + framePipeline.getProcessed() + " dropped:" + framePipeline.getDropped());
+        }
+        return rgba;
+    }
+
+    /**
+     * Stops pipelined processing of frames, if it runs
+     */
+    private void stopFramePipeline() {
+        if (framePipeline != null) {
+            framePipeline.stop();
+            Log.i(TAG, "frames processed:" + framePipeline.getProcessed() + " dropped:" + framePipeline.getDropped());
+            framePipeline = null;
+        }
+    }
+
+    /**
+     * Stops asynchronous processing of frames, if it runs
+     */
+    private void stopFrameWorker() {
+        if (frameWorker != null) {
+            frameWorker.stop();
+            Log.i(TAG, "frames processed:" + frameWorker.getProcessed() + " dropped:" + frameWorker.getDropped());
+            frameWorker = null;
+        }
+    }
+
+    /**
+     * Process one image frame in given mode
+     *
+     * @param mode
+     * @param inputFrame
+     * @return image to show
+     */
+    private Mat processFrame(int mode, CvCameraViewFrame inputFrame) {
         switch (mode) {
 
             case VIEW_MODE_RGBA:
@@ -342,62 +675,108 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
             case VIEW_MODE_SEGMENT:
                 matGray = inputFrame.gray();
 
-                segmentation();
+                segmentation(matGray, matEdges, isLandscapeSegmentation(mode, orientation), segmentTopFor(mode));
                 matRgba = matEdges;
                 break;
 
-            case VIEW_MODE_OPENCV_LINES:
+            default:
                 matRgba = inputFrame.rgba();
                 matGray = inputFrame.gray();
 
-                segmentation();
-                openCVLines();
+                //Both stages see the same segmentation even if the horizon or orientation changes meanwhile
+                int top = segmentTopFor(mode);
+                int currentOrientation = orientation;
+                detectEdges(mode, currentOrientation, top, matGray, matEdges);
+                detect(mode, currentOrientation, top);
                 break;
+        }
+        return matRgba;
+    }
 
-            case VIEW_MODE_OPENCV_LINES_HORIZON:
-                matRgba = inputFrame.rgba();
-                matGray = inputFrame.gray();
+    /**
+     * First stage of detection modes, edge detection in greyscale image. Uses no working matrices and no state changed
+     * by detection, so it can run while the previous frame is detected.
+     *
+     * @param mode
+     * @param orientation screen orientation when the frame arrived
+     * @param top first row of segmented part of landscape image when the frame arrived
+     * @param gray
+     * @param edges
+     */
+    private void detectEdges(int mode, int orientation, int top, Mat gray, Mat edges) {
+        switch (mode) {
+            case VIEW_MODE_OPENCV_CIRCLES:
+                //OpenCV detects edges itself
+                break;
+            case VIEW_MODE_JAVA_CIRCLES_NAIVE:
+            case VIEW_MODE_JAVA_CIRCLES_PYRAMID:
+                thresholdEdges(gray, edges);
+                break;
+            case VIEW_MODE_JAVA_CIRCLES_GRADIENT:
+            case VIEW_MODE_JAVA_CIRCLES_RANDOMIZED:
+                circleEdges(gray, edges);
+                break;
+            default:
+                segmentation(gray, edges, isLandscapeSegmentation(mode, orientation), top);
+                break;
+        }
+    }
 
-                segmentation();
+    /**
+     * Second stage of detection modes, voting, search for peaks and drawing of detected objects to matRgba
+     *
+     * @param mode
+     * @param orientation screen orientation the edges were detected for
+     * @param top first row of segmented part of landscape image the edges were detected for
+     */
+    private void detect(int mode, int orientation, int top) {
+        frameMode = mode;
+        frameOrientation = orientation;
+        frameSegmentTop = top;
+        switch (mode) {
+            case VIEW_MODE_OPENCV_LINES:
+                openCVLines();
+                break;
+            case VIEW_MODE_OPENCV_LINES_HORIZON:
                 openCVLinesWithHorizon();
                 break;
-
             case VIEW_MODE_OPENCV_LINE_SEGMENTS:
-                matRgba = inputFrame.rgba();
-                matGray = inputFrame.gray();
-
-                segmentation();
                 openCVLineSegments();
                 break;
-
             case VIEW_MODE_JAVA_LINES_OPTIMIZED:
-                matRgba = inputFrame.rgba();
-                matGray = inputFrame.gray();
-
-                segmentation();
                 javaOptimizedLines();
                 break;
             case VIEW_MODE_JAVA_LINES_NAIVE:
-                matRgba = inputFrame.rgba();
-                matGray = inputFrame.gray();
-
-                segmentation();
                 javaNaiveLines();
                 break;
+            case VIEW_MODE_JAVA_LINES_PROBABILISTIC:
+                javaProbabilisticLines();
+                break;
+            case VIEW_MODE_JAVA_LINE_SEGMENTS:
+                javaLineSegments();
+                break;
+            case VIEW_MODE_JAVA_LINES_HIERARCHICAL:
+                javaHierarchicalLines();
+                break;
+            case VIEW_MODE_JAVA_LANES_TRACKING:
+                javaLaneTracking();
+                break;
             case VIEW_MODE_OPENCV_CIRCLES:
-                matRgba = inputFrame.rgba();
-                matGray = inputFrame.gray();
-
                 openCVCircles();
                 break;
             case VIEW_MODE_JAVA_CIRCLES_NAIVE:
-                matRgba = inputFrame.rgba();
-                matGray = inputFrame.gray();
-
                 javaNaiveCircles();
                 break;
+            case VIEW_MODE_JAVA_CIRCLES_GRADIENT:
+                javaGradientCircles();
+                break;
+            case VIEW_MODE_JAVA_CIRCLES_RANDOMIZED:
+                javaRandomizedCircles();
+                break;
+            case VIEW_MODE_JAVA_CIRCLES_PYRAMID:
+                javaPyramidCircles();
+                break;
         }
-        return matRgba;
     }
 
     /**
@@ -406,9 +785,29 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
      * @return lineThreshold
      */
     private int getLineThreshold() {
-        int actualThresh = (viewMode == VIEW_MODE_OPENCV_LINES_HORIZON) ? lineThreshold - lineThreshold / 5 : lineThreshold;
+        boolean lanes = frameMode == VIEW_MODE_OPENCV_LINES_HORIZON || frameMode == VIEW_MODE_JAVA_LANES_TRACKING;
+        int actualThresh = lanes ? lineThreshold - lineThreshold / 5 : lineThreshold;
 
-        return (orientation == 1) ? actualThresh : actualThresh - actualThresh / 3;
+        return (frameOrientation == 1) ? actualThresh : actualThresh - actualThresh / 3;
+    }
+
+    /**
+     * Road lanes are searched for in the bottom of the image in landscape orientation and in lane modes,
+     * otherwise in the right third of portrait image
+     *
+     * @return true if the bottom of the frame being detected is segmented
+     */
+    private boolean isLandscapeSegmentation() {
+        return isLandscapeSegmentation(frameMode, frameOrientation);
+    }
+
+    /**
+     * @param mode
+     * @param orientation
+     * @return true if the bottom of the image is segmented in the mode and orientation
+     */
+    private static boolean isLandscapeSegmentation(int mode, int orientation) {
+        return mode == VIEW_MODE_OPENCV_LINES_HORIZON || mode == VIEW_MODE_JAVA_LANES_TRACKING || orientation == 1;
     }
 
     /**
@@ -416,16 +815,24 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
      *
      * @param grey greyscale image
      * @param edges binary image with segmented edges
+     * @param landscape true to segment the bottom of the image, false for the right third
+     * @param top first row of segmented part of landscape image
      */
-    private void segmentation() {
+    private void segmentation(Mat grey, Mat edges, boolean landscape, int top) {
 
-        //Bottom half of landscape image
-        if (viewMode == VIEW_MODE_OPENCV_LINES_HORIZON || orientation == 1) {
-            matGray.submat(height / 2, height, 0, width).copyTo(matEdges.submat(height / 2, height, 0, width));
+        //Only the segmented part is processed, the rest has no edges
+        Mat rest = landscape ? edges.rowRange(0, top) : edges.colRange(0, (2 * width) / 3);
+        rest.setTo(new Scalar(0));
+        rest.release();
+        edges = segmentedPart(edges, landscape, top);
+
+        //Bottom of landscape image below the horizon
+        if (landscape) {
+            grey.submat(top, height, 0, width).copyTo(edges);
         } 
         //Bottom third of portrait image
         else {
-            matGray.submat(0, height, (2 * width) / 3, width).copyTo(matEdges.submat(0, height, (2 * width) / 3, width));
+            grey.submat(0, height, (2 * width) / 3, width).copyTo(edges);
         }
 
         /* Gaussian blur
@@ -441,12 +848,13 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         
         /* Adaptive threshold                                                
          **/
-         Imgproc.adaptiveThreshold(matEdges, matEdges, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 3, -1.5);
+         Imgproc.adaptiveThreshold(edges, edges, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 3, -1.5);
 
          //Delete noise (little white points)
          //Imgproc.dilate(matEdges, matEdges, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2, 2)));
-         Imgproc.erode(matEdges, matEdges, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2, 2)));
+         Imgproc.erode(edges, edges, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2, 2)));
          //Imgproc.medianBlur(matEdges, matEdges, 3);
+         edges.release();
          
         
         /* Canny edge detection
@@ -463,6 +871,70 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         */
     }
 
+    /**
+     * First row of segmented part of landscape image for a frame in the mode. Only modes which estimate the horizon move it,
+     * other modes always start in the middle, so a horizon left over from a previous mode does not cut their segmentation.
+     *
+     * @param mode
+     * @return first row of segmented part of landscape image
+     */
+    private int segmentTopFor(int mode) {
+        if (mode == VIEW_MODE_OPENCV_LINES_HORIZON || mode == VIEW_MODE_JAVA_LANES_TRACKING) {
+            return segmentTop;
+        }
+        return height / 2;
+    }
+
+    /**
+     * Segmented part of the image
+     *
+     * @param image
+     * @param landscape true for the bottom of the image, false for the right third
+     * @param top first row of segmented part of landscape image
+     * @return submatrix of the image, release it after use
+     */
+    private Mat segmentedPart(Mat image, boolean landscape, int top) {
+        if (landscape) {
+            return image.submat(top, height, 0, width);
+        }
+        return image.submat(0, height, (2 * width) / 3, width);
+    }
+
+    /**
+     * Extract edge points only from the segmented part of the image
+     */
+    private void extractSegmentedEdgePoints() {
+        if (isLandscapeSegmentation()) {
+            edgePoints.extract(matEdges, frameSegmentTop, height, 0, width);
+        } else {
+            edgePoints.extract(matEdges, 0, height, (2 * width) / 3, width);
+        }
+    }
+
+    /**
+     * Part of hough space where road lanes can be found in the segmented part of the image. Lanes in landscape are roughly vertical,
+     * in portrait they are roughly horizontal, as the bottom of the road is at the right side of the image.
+     *
+     * @param originX x coordinate of the origin used by the line transform
+     * @param originY y coordinate of the origin used by the line transform
+     * @return region of hough space, null if voting should not be restricted
+     */
+    private LineRegion getLaneRegion(double originX, double originY) {
+        if (!lineLaneRegion) {
+            return null;
+        }
+        if (isLandscapeSegmentation()) {
+
+            //Skip normals close to vertical, they belong to horizontal lines
+            int[] thetas = new int[]{0, 90 - LANE_ANGLE_MARGIN, 90 + LANE_ANGLE_MARGIN, 180};
+            return LineRegion.around(thetas, 180, originX, originY, 0, frameSegmentTop, width, height);
+        }
+
+        //Skip normals close to horizontal, they belong to vertical lines
+        int[] thetas = new int[]{LANE_ANGLE_MARGIN, 180 - LANE_ANGLE_MARGIN};
+        return LineRegion.around(thetas, 180, originX, originY, (2 * width) / 3, 0, width, height);
+    }
+
     /**
      * Draw detected lines to output image from temporary matrix
      *
@@ -470,9 +942,9 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
      */
     private void drawTmpToMRgba(Mat tmp) {
         drawBordersToMRgba();
-        if (viewMode == VIEW_MODE_OPENCV_LINES_HORIZON || orientation == 1) {
+        if (isLandscapeSegmentation()) {
             if (tmp != null) {
-                tmp.submat(height / 2, height, 0, width).copyTo(matRgba.submat(height / 2, height, 0, width));
+                tmp.submat(frameSegmentTop, height, 0, width).copyTo(matRgba.submat(frameSegmentTop, height, 0, width));
             }
         } else {
             if (tmp != null) {
@@ -485,8 +957,8 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
      * Draw segmentation borders to output image
      */
     private void drawBordersToMRgba() {
-        if (viewMode == VIEW_MODE_OPENCV_LINES_HORIZON || orientation == 1) {
-            Core.line(matRgba, new Point(0, height / 2 - 1), new Point(width, height / 2 - 1), new Scalar(0, 255, 0), 1);
+        if (isLandscapeSegmentation()) {
+            Core.line(matRgba, new Point(0, frameSegmentTop - 1), new Point(width, frameSegmentTop - 1), new Scalar(0, 255, 0), 1);
         } else {
             Core.line(matRgba, new Point((2 * width) / 3 - 1, 0), new Point((2 * width) / 3 - 1, height), new Scalar(0, 255, 0), 1);
         }
@@ -498,7 +970,9 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         lines = new Mat();
 
         //Straight line detection
+        long startTime = System.nanoTime();
         Imgproc.HoughLines(matEdges, lines, 1, Math.PI / 180, getLineThreshold());
+        long time = (System.nanoTime() - startTime) / 1000000;
 
         //Draw straight lines to temporary matrix
         Mat tmp = new Mat(matRgba.rows(), matRgba.cols(), CvType.CV_8UC4);
@@ -530,7 +1004,7 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         drawTmpToMRgba(tmp);
 
         //Cleanup
-        Log.i(TAG, "lines:" + lines.cols());
+        Log.i(TAG, "lines:" + lines.cols() + " time:" + time + "ms");
         tmp.release();
         tmp = null;
         lines.release();
@@ -553,11 +1027,24 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         minLeftLaneY = 3 * height / 4;
         minRightLaneY = 3 * height / 4;
 
+        //Read rho and theta values of all lines at once
+        if (lineBuffer.length < 2 * lines.cols()) {
+            lineBuffer = new float[4 * lines.cols()];
+        }
+        if (lines.cols() > 0) {
+            lines.get(0, 0, lineBuffer);
+        }
+        vanishingPoint.clear();
+
         //Get rho and theta values for every line and convert it to cartesian space
         for (int j = 0; j < lines.cols(); j++) {
-            double[] vec = lines.get(0, j);
-            double rho = vec[0],
-                    theta = vec[1];
+            double rho = lineBuffer[2 * j],
+                    theta = lineBuffer[2 * j + 1];
+
+            //Lines which can be lanes meet at the horizon
+            if (Math.abs(theta - Math.PI / 2) > Math.toRadians(LANE_ANGLE_MARGIN)) {
+                vanishingPoint.add(theta, rho, 0, 0);
+            }
 
             //Vertical-ish lines conversion
             if ((theta < Math.PI / 4 || theta > 3 * Math.PI / 4)) {
@@ -594,8 +1081,49 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
 
         }
 
+        //Horizon where most of the lines meet, segmentation of next frames starts below it
+        Point horizon = null;
+        if (vanishingPoint.estimate()) {
+            horizon = new Point(vanishingPoint.getX(), vanishingPoint.getY());
+            updateHorizon(vanishingPoint.getY());
+        }
+
+        drawLanesWithHorizon(horizon);
+
+        //Cleanup
+        Log.i(TAG, "lines:" + lines.cols() + " horizon:" + horizonY + " segment top:" + segmentTop);
+        lines.release();
+        lines = null;
+    }
+
+    /**
+     * Forget the horizon, segmentation starts in the middle of landscape image
+     */
+    private void resetHorizon() {
+        horizonY = Double.NaN;
+        segmentTop = height / 2;
+    }
+
+    /**
+     * Add horizon of current frame to the running average and move the segmented part of landscape image below it,
+     * but never above the middle of the image
+     *
+     * @param y
+     */
+    private void updateHorizon(double y) {
+        horizonY = Double.isNaN(horizonY) ? y : horizonY + HORIZON_WEIGHT * (y - horizonY);
+        segmentTop = Math.max(height / 2, Math.min((3 * height) / 4, (int) horizonY + height / 10));
+    }
+
+    /**
+     * Draw left and right lane to output image, up to the horizon
+     *
+     * @param horizon point where the lanes meet, null to use intersection of the lanes
+     */
+    private void drawLanesWithHorizon(Point horizon) {
+
         //Get the horizon
-        Point i = Line.getIntersectionPoint(leftLane, rightLane);
+        Point i = (horizon != null) ? horizon : Line.getIntersectionPoint(leftLane, rightLane);
 
         if (i != null && i.x > 0 && i.x < width && i.y > 0 && i.y < height) {
             //Draw the lines with horizon
@@ -609,11 +1137,6 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
 
         //Draw segmentation borders
         drawBordersToMRgba();
-
-        //Cleanup
-        Log.i(TAG, "lines:" + lines.cols());
-        lines.release();
-        lines = null;
     }
 
     private void openCVLineSegments() {
@@ -646,38 +1169,164 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         lines = null;
     }
 
-    private void javaOptimizedLines() {
+    /**
+     * Clear Hough line transform from previous frame, apply current settings and extract edge points of current frame
+     *
+     * @param incremental true to keep votes of previous frame, which are then updated by addPointsIncremental
+     */
+    private void prepareLineTransform(boolean incremental) {
+
+        //Clear votes from previous frame
+        if (!incremental) {
+            houghLineTransform.reset();
+        }
+        houghLineTransform.setFixedPoint(lineFixedPoint);
+        houghLineTransform.setPool(votingPool, true);
+        houghLineTransform.setGradientWindow(lineGradientWindow);
+        houghLineTransform.setNative(useNative);
+        houghLineTransform.setRegion(getLaneRegion(width / 2, height / 2));
+
+        //Read edge points straight from segmented part of the image
+        extractSegmentedEdgePoints();
+        if (lineGradientWindow > 0) {
+            edgePoints.computeOrientations(matGray, 180);
+        }
+    }
+
+    /**
+     * Draw lines detected by Hough line transform
+     *
+     * @param lines
+     */
+    private void drawHoughLines(Vector<HoughLine> lines) {
+        lineRenderer.clear();
+        lineRenderer.addAll(lines);
+        renderLines();
+    }
 
-        //Initialize Hough transform
-        HoughLineTransform houghLineTransform = new HoughLineTransform(width, height);
+    /**
+     * Draw lines of the line set
+     *
+     * @param lines
+     */
+    private void drawLineSet(LineSet lines) {
+        lineRenderer.clear();
+        lineRenderer.addAll(lines);
+        renderLines();
+    }
 
-        Utils.matToBitmap(matEdges, edgeBitmap);
+    /**
+     * Draw lines of the renderer straight to the segmented part of output image
+     */
+    private void renderLines() {
+        if (isLandscapeSegmentation()) {
+            lineRenderer.setRegion(0, frameSegmentTop, width, height);
+        } else {
+            lineRenderer.setRegion((2 * width) / 3, 0, width, height);
+        }
+        lineRenderer.render(matRgba);
 
-        houghLineTransform.addPoints(edgeBitmap);
+        drawBordersToMRgba();
+    }
 
-        Vector<HoughLine> lines = houghLineTransform.getLines(getLineThreshold());
+    private void javaOptimizedLines() {
+        prepareLineTransform(lineIncremental);
 
-        Mat tmp = new Mat(height, width, CvType.CV_8UC4);
-        matRgba.copyTo(tmp);
-        for (int j = 0; j < lines.size(); j++) {
-            HoughLine line = lines.elementAt(j);
-            line.draw(tmp);
+        //Steady view changes only few edge pixels, only they vote again
+        if (lineIncremental) {
+            houghLineTransform.addPointsIncremental(edgePoints);
+        } else {
+            houghLineTransform.addPoints(edgePoints);
         }
 
-        drawTmpToMRgba(tmp);
+        //Only the strongest lines are kept
+        lineSet.setCapacity(maxLineCount);
+        houghLineTransform.getLines(getLineThreshold(), lineSet);
+        drawLineSet(lineSet);
+
+        Log.i(TAG, "lines:" + lineSet.size());
+    }
+
+    private void javaProbabilisticLines() {
+        prepareLineTransform(false);
+
+        //Straight line detection, stops when enough lines are found
+        long startTime = System.nanoTime();
+        Vector<HoughLine> lines = houghLineTransform.addPointsProbabilistic(edgePoints, getLineThreshold(), maxLineCount, linePointFraction / 100f);
+        long time = (System.nanoTime() - startTime) / 1000000;
+
+        drawHoughLines(lines);
 
         //Cleanup
-        Log.i(TAG, "lines:" + lines.size());
+        Log.i(TAG, "lines:" + lines.size() + " time:" + time + "ms");
         lines.clear();
         lines = null;
-        tmp.release();
-        tmp = null;
+    }
+
+    private void javaLineSegments() {
+        prepareLineTransform(false);
+
+        //Line segments detection
+        long startTime = System.nanoTime();
+        int count = houghLineSegments.detect(edgePoints, getLineThreshold(), minLineSize, maxLineGap, maxLineCount);
+        long time = (System.nanoTime() - startTime) / 1000000;
+
+        //Draw line segments
+        float[] segments = houghLineSegments.getSegments();
+        for (int i = 0; i < count; i++) {
+            Point start = new Point(segments[4 * i], segments[4 * i + 1]);
+            Point end = new Point(segments[4 * i + 2], segments[4 * i + 3]);
+
+            Core.line(matRgba, start, end, new Scalar(255, 0, 0), 3);
+        }
+
+        drawTmpToMRgba(null);
+
+        Log.i(TAG, "lines:" + count + " time:" + time + "ms");
+    }
+
+    private void javaHierarchicalLines() {
+        extractSegmentedEdgePoints();
+
+        //Coarse voting, then refinement of strong cells only
+        long startTime = System.nanoTime();
+        lineSet.setCapacity(maxLineCount);
+        hierarchicalHoughLines.getLines(edgePoints, getLineThreshold(), lineSet);
+        long time = (System.nanoTime() - startTime) / 1000000;
+
+        drawLineSet(lineSet);
+
+        Log.i(TAG, "lines:" + lineSet.size() + " time:" + time + "ms");
+    }
+
+    private void javaLaneTracking() {
+        prepareLineTransform(false);
+
+        //Tracked lanes are searched for near their prediction, lost lanes in the whole transform
+        long startTime = System.nanoTime();
+        laneTracker.update(edgePoints, getLineThreshold());
+        long time = (System.nanoTime() - startTime) / 1000000;
+
+        //Lanes which are not tracked keep their last position
+        laneTracker.getLane(LaneTracker.LEFT, leftLane);
+        laneTracker.getLane(LaneTracker.RIGHT, rightLane);
+
+        drawLanesWithHorizon(null);
+
+        Log.i(TAG, "tracked:" + laneTracker.isTracked(LaneTracker.LEFT) + "," + laneTracker.isTracked(LaneTracker.RIGHT)
+                + " full searches:" + laneTracker.getFullSearches() + " time:" + time + "ms");
     }
 
     private void javaNaiveLines() {
 
-        //Straight line detection
-        HoughLines houghLines = new HoughLines(matEdges, getLineThreshold());
+        //Edge points of the segmented part of the image
+        extractSegmentedEdgePoints();
+        if (lineGradientWindow > 0) {
+            edgePoints.computeOrientations(matGray, 180);
+        }
+
+        //Straight line detection, rho is measured from the top left corner
+        HoughLines houghLines = new HoughLines(edgePoints, getLineThreshold(), lineFixedPoint, lineGradientWindow, getLaneRegion(0, 0), votingPool, accumulatorCell);
 
         //Draw lines
         Mat tmp = new Mat(height, width, CvType.CV_8UC4);
@@ -725,20 +1374,84 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
 
     private void javaNaiveCircles() {
 
-        //Segment image and detect edges
-        matGray.copyTo(matEdges);
-        Imgproc.adaptiveThreshold(matEdges, matEdges, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 3, -0.5);
+        //Edge points of the whole image
+        edgePoints.extract(matEdges);
 
         //Circle detection and draw result
         if (minRadius == maxRadius) {
-            HoughCircles2D houghCircles2D = new HoughCircles2D(matEdges, circleTreshold, minRadius, distanceRadius);
+            HoughCircles2D houghCircles2D = new HoughCircles2D(edgePoints, circleTreshold, minRadius, distanceRadius, votingPool, useNative, accumulatorCell, circleVotes);
+            circleVotes = houghCircles2D.getNativeVotes();
             houghCircles2D.drawCircles(matRgba);
         } else {
-            HoughCircles3D houghCircles3D = new HoughCircles3D(matEdges, circleTreshold, minRadius, maxRadius, distanceRadius);
+            HoughCircles3D houghCircles3D = new HoughCircles3D(edgePoints, circleTreshold, minRadius, maxRadius, distanceRadius, votingPool, accumulatorCell);
             houghCircles3D.drawCircles(matRgba);
         }
     }
 
+    /**
+     * Segmentation and edge detection for circle modes which vote for every edge point
+     *
+     * @param gray
+     * @param edges
+     */
+    private void thresholdEdges(Mat gray, Mat edges) {
+        gray.copyTo(edges);
+        Imgproc.adaptiveThreshold(edges, edges, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 3, -0.5);
+    }
+
+    /**
+     * Edge detection for circle modes which need thin edges of objects
+     *
+     * @param gray blurred in place
+     * @param edges
+     */
+    private void circleEdges(Mat gray, Mat edges) {
+
+        //Gaussian blur, so gradient directions of edges are not disturbed by noise
+        Imgproc.GaussianBlur(gray, gray, new Size(5, 5), 1);
+
+        //Canny edge detection, circle edges are thin and their gradient is strong
+        double mean = Core.mean(gray).val[0];
+        Imgproc.Canny(gray, edges, 0.66 * mean, 1.33 * mean);
+    }
+
+    private void javaGradientCircles() {
+
+        //Edge points and their directions
+        edgePoints.extract(matEdges);
+        edgePoints.computeOrientations(matGray, 180);
+
+        //Circle detection and draw result
+        HoughCirclesGradient houghCircles = new HoughCirclesGradient(edgePoints, circleTreshold, minRadius, maxRadius, distanceRadius, votingPool, accumulatorCell);
+        houghCircles.drawCircles(matRgba);
+        Log.i(TAG, "circles:" + houghCircles.getCircles().size());
+    }
+
+    private void javaRandomizedCircles() {
+
+        //Edge points of the whole image
+        edgePoints.extract(matEdges);
+
+        //Circle detection and draw result
+        RandomizedHoughCircles houghCircles = new RandomizedHoughCircles(edgePoints, circleTreshold, minRadius, maxRadius, distanceRadius, circleIterations, maxCircleCount);
+        houghCircles.drawCircles(matRgba);
+        Log.i(TAG, "circles:" + houghCircles.getCircles().size() + " iterations:" + houghCircles.getIterations() + " cells:" + houghCircles.getMaxCells());
+    }
+
+    private void javaPyramidCircles() {
+
+        //Edge points of the whole image
+        edgePoints.extract(matEdges);
+
+        //Circle detection in downscaled edges, refinement in full resolution and draw result
+        long startTime = System.nanoTime();
+        PyramidHoughCircles houghCircles = new PyramidHoughCircles(edgePoints, circleTreshold, minRadius, maxRadius, distanceRadius,
+                circlePyramidScale, votingPool, accumulatorCell);
+        long time = (System.nanoTime() - startTime) / 1000000;
+        houghCircles.drawCircles(matRgba);
+        Log.i(TAG, "circles:" + houghCircles.getCircles().size() + " candidates:" + houghCircles.getCandidates() + " time:" + time + "ms");
+    }
+
     @Override
     public void onPause() {
         super.onPause();
@@ -758,12 +1471,16 @@ public class HoughActivity extends Activity implements CvCameraViewListener2 {
         if (openCvCameraView != null) {
             openCvCameraView.disableView();
         }
+        if (votingPool != null) {
+            votingPool.shutdown();
+        }
     }
 
     public void onCameraViewStopped() {
+        stopFrameWorker();
+        stopFramePipeline();
         matRgba.release();
         matGray.release();
         matEdges.release();
-        edgeBitmap.recycle();
     }
 }
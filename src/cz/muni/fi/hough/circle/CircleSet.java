@@ -0,0 +1,191 @@
+package cz.muni.fi.hough.circle;
+
+import java.util.Arrays;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+
+/**
+ * Reusable set of circles detected by the hough transforms, kept in primitive arrays. Candidate circles are added as they are
+ * found and suppress keeps only the strongest ones with centers far enough apart. Kept centers are stored in a uniform grid of
+ * cells as big as the minimum distance, hashed into a table sized by the number of candidates, so every candidate is compared
+ * only with circles in the neighbouring cells and pruning does not depend on the size of the hough array.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class CircleSet {
+
+    //Center and radius of every circle
+    private int[] centersX = new int[16];
+    private int[] centersY = new int[16];
+    private int[] radii = new int[16];
+
+    //Votes of every circle
+    private int[] votes = new int[16];
+
+    //Number of circles in the set
+    private int size;
+
+    //Candidates ordered by votes, packed as (-votes << 32) | index
+    private long[] order = new long[0];
+
+    //Hash grid of kept circles: first circle of every bucket and next circle in the same bucket, -1 at the end
+    private int[] buckets = new int[0];
+    private int[] next = new int[0];
+
+    /**
+     * Removes all circles.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return number of circles in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a circle.
+     */
+    public void add(int x, int y, int radius, int votes) {
+        if (size == centersX.length) {
+            int capacity = 2 * size;
+            centersX = Arrays.copyOf(centersX, capacity);
+            centersY = Arrays.copyOf(centersY, capacity);
+            radii = Arrays.copyOf(radii, capacity);
+            this.votes = Arrays.copyOf(this.votes, capacity);
+        }
+        centersX[size] = x;
+        centersY[size] = y;
+        radii[size] = radius;
+        this.votes[size] = votes;
+        size++;
+    }
+
+    /**
+     * Keeps only circles whose centers are at least distance from the center of every stronger kept circle, of any radius. Kept
+     * circles are ordered from the one with most votes.
+     *
+     * @param distance minimum distance between two different centers
+     */
+    public void suppress(int distance) {
+        if (size == 0) {
+            return;
+        }
+        if (order.length < size) {
+            order = new long[size];
+            next = new int[size];
+        }
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) -votes[i] << 32) | i;
+        }
+        Arrays.sort(order, 0, size);
+
+        //Table with at least twice as many buckets as candidates
+        int bucketCount = Integer.highestOneBit(Math.max(1, size)) << 2;
+        if (buckets.length != bucketCount) {
+            buckets = new int[bucketCount];
+        }
+        Arrays.fill(buckets, -1);
+        int cell = Math.max(1, distance);
+        long squared = (long) distance * distance;
+
+        //Strongest candidates first, kept circles are moved to the front of the arrays
+        int[] x = Arrays.copyOf(centersX, size);
+        int[] y = Arrays.copyOf(centersY, size);
+        int[] r = Arrays.copyOf(radii, size);
+        int[] v = Arrays.copyOf(votes, size);
+        int kept = 0;
+        for (int k = 0; k < size; k++) {
+            int i = (int) order[k];
+            int cellX = floorDiv(x[i], cell);
+            int cellY = floorDiv(y[i], cell);
+
+            //Centers closer than distance can only be in the same or in a neighbouring cell
+            boolean near = false;
+            for (int dy = -1; dy <= 1 && !near; dy++) {
+                for (int dx = -1; dx <= 1 && !near; dx++) {
+                    for (int j = buckets[bucket(cellX + dx, cellY + dy, bucketCount)]; j >= 0; j = next[j]) {
+                        long ex = centersX[j] - x[i];
+                        long ey = centersY[j] - y[i];
+                        if (ex * ex + ey * ey < squared) {
+                            near = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            if (near) {
+                continue;
+            }
+
+            centersX[kept] = x[i];
+            centersY[kept] = y[i];
+            radii[kept] = r[i];
+            votes[kept] = v[i];
+            int b = bucket(cellX, cellY, bucketCount);
+            next[kept] = buckets[b];
+            buckets[b] = kept;
+            kept++;
+        }
+        size = kept;
+    }
+
+    private static int floorDiv(int a, int b) {
+        return (a >= 0) ? a / b : -((-a + b - 1) / b);
+    }
+
+    private static int bucket(int cellX, int cellY, int bucketCount) {
+        return ((cellX * 0x9E3779B1) ^ (cellY * 0x85EBCA77)) >>> 8 & (bucketCount - 1);
+    }
+
+    /**
+     * @return x coordinate of the center of a circle
+     */
+    public int getX(int i) {
+        return centersX[i];
+    }
+
+    /**
+     * @return y coordinate of the center of a circle
+     */
+    public int getY(int i) {
+        return centersY[i];
+    }
+
+    /**
+     * @return radius of a circle
+     */
+    public int getRadius(int i) {
+        return radii[i];
+    }
+
+    /**
+     * @return votes of a circle
+     */
+    public int getVotes(int i) {
+        return votes[i];
+    }
+
+    /**
+     * Draws circles in green with centers in red to the image.
+     *
+     * @param image
+     */
+    public void draw(Mat image) {
+        for (int i = 0; i < size; i++) {
+            Point center = new Point(centersX[i], centersY[i]);
+
+            //Draw the circle in green color and thickness of 3px
+            Core.circle(image, center, radii[i], new Scalar(0, 255, 0), 3);
+
+            //Draw the center in red color
+            Core.line(image, center, center, new Scalar(255, 0, 0), 3);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package cz.muni.fi.hough.frame;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opencv.core.Mat;
+
+import android.util.Log;
+
+/**
+ * Processes camera frames in stages, every stage on its own thread, so while a frame is segmented the previous one is detected
+ * and the overlay of the one before it is finished. Throughput approaches the speed of the slowest stage instead of the sum of
+ * all stages, so it grows only as much as the work is spread between the stages. Stages pass frames to each other through bounded lock-free queues, each with one producer and one consumer thread.
+ * A fixed number of jobs with their own images is recycled, so images are not allocated while processing and a frame is dropped
+ * when all jobs are busy. Processing draws detected objects onto a black overlay, the last stage makes its mask and the newest
+ * finished overlay is drawn over every preview frame, like in LatestFrameWorker.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class FramePipeline {
+
+    private static final String TAG = "FramePipeline";
+
+    /**
+     * Stage of processing, called on its own thread for one frame after another.
+     */
+    public interface Stage {
+
+        /**
+         * @param job frame processed in the stage
+         */
+        void process(Job job);
+    }
+
+    /**
+     * Frame passing through the stages, with images kept between frames.
+     */
+    public static class Job {
+
+        //Greyscale image of the frame
+        public final Mat gray = new Mat();
+
+        //Edges of the frame
+        public final Mat edges = new Mat();
+
+        //Black image detected objects are drawn onto
+        public final Mat overlay = new Mat();
+
+        //Drawn pixels of the overlay
+        private final Mat mask = new Mat();
+
+        //View mode the frame is processed in
+        public int mode;
+
+        //Screen orientation and first row of the segmented part when the frame arrived, all stages process the same part
+        public int orientation;
+        public int segmentTop;
+
+        private void release() {
+            gray.release();
+            edges.release();
+            overlay.release();
+            mask.release();
+        }
+    }
+
+    //Jobs beyond one per stage, the shown one and one the camera can fill
+    private static final int SPARE_JOBS = 2;
+
+    //Stages given to the pipeline followed by the stage which makes the mask
+    private final Stage[] stages;
+
+    //Input queue of every stage, the last queue holds finished jobs
+    private final List<RingQueue<Job>> queues = new ArrayList<RingQueue<Job>>();
+
+    private final Thread[] threads;
+
+    private final Job[] jobs;
+
+    //Jobs the camera can fill, used only by the camera thread
+    private final ArrayDeque<Job> free = new ArrayDeque<Job>();
+
+    //Job whose overlay is drawn over the preview
+    private Job shown;
+
+    private volatile boolean running;
+
+    //Number of submitted and dropped frames, counted by the camera thread, and of finished frames, counted by the last stage
+    private long submitted, dropped;
+    private volatile long processed;
+
+    /**
+     * @param stages stages every frame passes in order
+     */
+    public FramePipeline(Stage... stages) {
+        this.stages = new Stage[stages.length + 1];
+        System.arraycopy(stages, 0, this.stages, 0, stages.length);
+        this.stages[stages.length] = new Stage() {
+            @Override
+            public void process(Job job) {
+                Overlays.mask(job.overlay, job.mask);
+            }
+        };
+
+        //Every queue can hold all jobs, so a stage never waits for the next one
+        jobs = new Job[this.stages.length + SPARE_JOBS];
+        for (int i = 0; i < jobs.length; i++) {
+            jobs[i] = new Job();
+            free.add(jobs[i]);
+        }
+        for (int i = 0; i <= this.stages.length; i++) {
+            queues.add(new RingQueue<Job>(jobs.length));
+        }
+        threads = new Thread[this.stages.length];
+    }
+
+    /**
+     * Starts a thread for every stage.
+     */
+    public void start() {
+        running = true;
+        for (int i = 0; i < stages.length; i++) {
+            final int stage = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop(stage);
+                }
+            }, "FramePipeline-" + i);
+        }
+
+        //Every stage unparks the thread of the next one, so all of them exist before any starts
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops all threads after they finish their current frames and releases images of all jobs.
+     */
+    public void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+        for (int i = 0; i < threads.length; i++) {
+            if (threads[i] != null) {
+                try {
+                    threads[i].join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                threads[i] = null;
+            }
+        }
+        for (Job job : jobs) {
+            job.release();
+        }
+    }
+
+    private void loop(int stage) {
+        RingQueue<Job> input = queues.get(stage);
+        RingQueue<Job> output = queues.get(stage + 1);
+        boolean last = stage + 1 == threads.length;
+        Thread next = last ? null : threads[stage + 1];
+
+        while (running) {
+            Job job = input.poll();
+            if (job == null) {
+
+                //Previous stage unparks this thread after it offers a job
+                LockSupport.park(this);
+                continue;
+            }
+
+            if (stage == 0) {
+                Overlays.clear(job.overlay, job.gray);
+            }
+
+            //Failed frame is passed on anyway, so its job is freed and the stage keeps processing next frames
+            try {
+                stages[stage].process(job);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Stage " + stage + " failed", e);
+            }
+            if (!output.offer(job)) {
+                throw new IllegalStateException("Queue of stage " + (stage + 1) + " is full");
+            }
+            if (last) {
+                processed++;
+            } else {
+                LockSupport.unpark(next);
+            }
+        }
+    }
+
+    /**
+     * Copies greyscale image of the frame into a free job and passes it to the first stage. Called by the camera thread.
+     *
+     * @param gray
+     * @param mode view mode the frame is processed in
+     * @param orientation screen orientation
+     * @param segmentTop first row of the segmented part
+     * @return false if all jobs were busy and the frame was dropped
+     */
+    public boolean submit(Mat gray, int mode, int orientation, int segmentTop) {
+        collectFinished();
+        submitted++;
+        Job job = free.poll();
+        if (job == null) {
+            dropped++;
+            return false;
+        }
+        gray.copyTo(job.gray);
+        job.mode = mode;
+        job.orientation = orientation;
+        job.segmentTop = segmentTop;
+        queues.get(0).offer(job);
+        LockSupport.unpark(threads[0]);
+        return true;
+    }
+
+    /**
+     * Draws overlay of the newest finished frame over the image. Called by the camera thread.
+     *
+     * @param rgba
+     * @return false if no frame was finished yet
+     */
+    public boolean drawLatest(Mat rgba) {
+        collectFinished();
+        if (shown == null) {
+            return false;
+        }
+        shown.overlay.copyTo(rgba, shown.mask);
+        return true;
+    }
+
+    /**
+     * Newest finished job becomes the shown one, the others are free again.
+     */
+    private void collectFinished() {
+        RingQueue<Job> finished = queues.get(stages.length);
+        Job job;
+        while ((job = finished.poll()) != null) {
+            if (shown != null) {
+                free.add(shown);
+            }
+            shown = job;
+        }
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return number of stages including the one which makes the mask
+     */
+    public int getStages() {
+        return stages.length;
+    }
+}
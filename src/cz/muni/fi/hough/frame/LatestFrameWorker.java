@@ -0,0 +1,206 @@
+package cz.muni.fi.hough.frame;
+
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+import org.opencv.core.Mat;
+
+import android.util.Log;
+
+/**
+ * Processes camera frames on its own thread, so slow detection does not stall the camera preview. Greyscale image of a submitted
+ * frame is copied into a single slot, which the next frame overwrites if the worker is still busy, so only the newest frame is
+ * processed and shown results are at most one processing cycle old. Processing draws detected objects onto a black overlay
+ * instead of the frame, and the last finished overlay is drawn over every preview frame.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class LatestFrameWorker {
+
+    private static final String TAG = "LatestFrameWorker";
+
+    /**
+     * Processing of frames on the worker thread.
+     */
+    public interface Processor {
+
+        /**
+         * Processes a frame. Rgba image of the frame is the black overlay, everything drawn into it is shown over the preview.
+         *
+         * @param frame
+         */
+        void process(CvCameraViewFrame frame);
+    }
+
+    private final Processor processor;
+
+    //Guards the slot, the finished overlay and the counters
+    private final Object lock = new Object();
+
+    //Greyscale image of the newest submitted frame waiting for the worker
+    private Mat pending = new Mat();
+    private boolean hasPending;
+
+    //Greyscale image and overlay of the frame being processed
+    private Mat working = new Mat();
+    private Mat overlay = new Mat();
+    private Mat mask = new Mat();
+
+    //Last finished overlay and mask of its drawn pixels
+    private Mat finished = new Mat();
+    private Mat finishedMask = new Mat();
+    private boolean hasFinished;
+
+    //Number of submitted, processed and dropped frames, dropped ones were overwritten before the worker took them
+    private long submitted, processed, dropped;
+
+    private Thread thread;
+    private volatile boolean running;
+
+    //Frame handed to the processor
+    private final CvCameraViewFrame frame = new CvCameraViewFrame() {
+        @Override
+        public Mat rgba() {
+            return overlay;
+        }
+
+        @Override
+        public Mat gray() {
+            return working;
+        }
+    };
+
+    public LatestFrameWorker(Processor processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * Starts the worker thread.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "LatestFrameWorker");
+        thread.start();
+    }
+
+    /**
+     * Stops the worker thread after it finishes the current frame and releases all images.
+     */
+    public void stop() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        pending.release();
+        working.release();
+        overlay.release();
+        mask.release();
+        finished.release();
+        finishedMask.release();
+    }
+
+    private void loop() {
+        while (true) {
+
+            //Take the newest frame, the slot gets the buffer of the previous one
+            synchronized (lock) {
+                while (running && !hasPending) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                Mat taken = pending;
+                pending = working;
+                working = taken;
+                hasPending = false;
+            }
+
+            //Failed frame still replaces the shown overlay with a cleared one, so the worker keeps processing next frames
+            Overlays.clear(overlay, working);
+            try {
+                processor.process(frame);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Processing of a frame failed", e);
+                Overlays.clear(overlay, working);
+            }
+            Overlays.mask(overlay, mask);
+
+            synchronized (lock) {
+                Mat swap = finished;
+                finished = overlay;
+                overlay = swap;
+                swap = finishedMask;
+                finishedMask = mask;
+                mask = swap;
+                hasFinished = true;
+                processed++;
+            }
+        }
+    }
+
+    /**
+     * Copies greyscale image of the frame into the slot, replacing the frame which was not taken by the worker yet.
+     *
+     * @param gray
+     */
+    public void submit(Mat gray) {
+        synchronized (lock) {
+            if (hasPending) {
+                dropped++;
+            }
+            gray.copyTo(pending);
+            hasPending = true;
+            submitted++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Draws the last finished overlay over the image.
+     *
+     * @param rgba
+     * @return false if no frame was finished yet
+     */
+    public boolean drawLatest(Mat rgba) {
+        synchronized (lock) {
+            if (hasFinished) {
+                finished.copyTo(rgba, finishedMask);
+            }
+            return hasFinished;
+        }
+    }
+
+    public long getSubmitted() {
+        synchronized (lock) {
+            return submitted;
+        }
+    }
+
+    public long getProcessed() {
+        synchronized (lock) {
+            return processed;
+        }
+    }
+
+    public long getDropped() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package cz.muni.fi.hough.frame;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Overlays of detected objects drawn over the camera preview. Detection draws onto a black overlay, every pixel which is not
+ * black was drawn and is copied over the preview through a mask.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+final class Overlays {
+
+    private Overlays() {
+    }
+
+    /**
+     * Makes the overlay a black RGBA image of the size of the frame.
+     */
+    static void clear(Mat overlay, Mat frame) {
+        overlay.create(frame.rows(), frame.cols(), CvType.CV_8UC4);
+        overlay.setTo(new Scalar(0, 0, 0, 0));
+    }
+
+    /**
+     * Computes mask of the pixels of the overlay which are not black.
+     */
+    static void mask(Mat overlay, Mat mask) {
+        Imgproc.cvtColor(overlay, mask, Imgproc.COLOR_RGBA2GRAY);
+        Imgproc.threshold(mask, mask, 0, 255, Imgproc.THRESH_BINARY);
+    }
+}
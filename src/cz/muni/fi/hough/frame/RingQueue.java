@@ -0,0 +1,58 @@
+package cz.muni.fi.hough.frame;
+
+/**
+ * Bounded lock-free queue for one producer and one consumer thread. Producer writes only the tail and consumer only the head,
+ * both are volatile, so an item stored before the tail is moved is visible to the consumer which reads the new tail.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+final class RingQueue<T> {
+
+    private final Object[] items;
+    private final int mask;
+
+    //Index of the next item to poll and of the next free slot, they only grow
+    private volatile long head, tail;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    RingQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        items = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Called only by the producer.
+     *
+     * @return false if the queue is full
+     */
+    boolean offer(T item) {
+        long t = tail;
+        if (t - head == items.length) {
+            return false;
+        }
+        items[(int) t & mask] = item;
+        tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Called only by the consumer.
+     *
+     * @return the oldest item, null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long h = head;
+        if (h == tail) {
+            return null;
+        }
+        int slot = (int) h & mask;
+        T item = (T) items[slot];
+        items[slot] = null;
+        head = h + 1;
+        return item;
+    }
+}
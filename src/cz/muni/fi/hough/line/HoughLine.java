@@ -23,6 +23,14 @@ public class HoughLine {
         this.r = r;
     }
 
+    public double getTheta() {
+        return theta;
+    }
+
+    public double getR() {
+        return r;
+    }
+
     /**
      * Draws the line on the image of your choice with the RGB colour of your choice.
      */
@@ -67,6 +75,13 @@ public class HoughLine {
      * @author Jakub Medveck-Heretik
      */
     public void draw(Mat image) {
+        draw(image, theta, r);
+    }
+
+    /**
+     * Draws red line given by theta and r on the image (in OpenCV's org.opencv.core.Mat format). Thickness of line is 1 px.
+     */
+    public static void draw(Mat image, double theta, double r) {
 
         int height = image.rows();
         int width = image.cols();
@@ -0,0 +1,203 @@
+package cz.muni.fi.hough.line;
+
+import java.util.Vector;
+
+import org.opencv.core.Mat;
+
+import android.graphics.Bitmap;
+
+/**
+ * Draws lines detected by the hough transform, in the same representation as HoughLine, into a region of the image. Every line is
+ * clipped to the region once and rasterized into a reusable buffer of its pixels, which is read from the image and written back
+ * in one bulk call each, instead of one call per drawn pixel. Thickness of lines is 1 px.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class LineRenderer {
+
+    //Colour of lines drawn to Mat, as HoughLine draws them
+    private static final byte[] COLOR = new byte[]{(byte) 255, 0, 0, 0};
+
+    //Width of input image
+    private int width;
+
+    //Height of input image
+    private int height;
+
+    //Offset of r and coordinates of the centre of the image, as used by the hough transform
+    private int houghHeight;
+    private float centerX, centerY;
+
+    //Region to draw into, [left, right) and [top, bottom)
+    private int left, top, right, bottom;
+
+    //Lines to draw
+    private double[] thetas = new double[16];
+    private double[] rhos = new double[16];
+    private int size;
+
+    //Pixels of the region, RGBA bytes for Mat and colours for Bitmap
+    private byte[] bytes;
+    private int[] colors;
+
+    public LineRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        houghHeight = (int) (Math.sqrt(2) * Math.max(height, width)) / 2;
+        centerX = width / 2;
+        centerY = height / 2;
+        setRegion(0, 0, width, height);
+    }
+
+    /**
+     * Sets the region of the image lines are drawn into, parts of lines outside of it are not drawn.
+     */
+    public void setRegion(int left, int top, int right, int bottom) {
+        this.left = Math.max(0, left);
+        this.top = Math.max(0, top);
+        this.right = Math.min(width, right);
+        this.bottom = Math.min(height, bottom);
+    }
+
+    /**
+     * Removes all lines.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return number of lines to draw
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a line given by theta and r, with r increased by half of the hough array height as in HoughLine.
+     */
+    public void add(double theta, double r) {
+        if (size == thetas.length) {
+            double[] grownThetas = new double[2 * size];
+            double[] grownRhos = new double[2 * size];
+            System.arraycopy(thetas, 0, grownThetas, 0, size);
+            System.arraycopy(rhos, 0, grownRhos, 0, size);
+            thetas = grownThetas;
+            rhos = grownRhos;
+        }
+        thetas[size] = theta;
+        rhos[size] = r;
+        size++;
+    }
+
+    /**
+     * Adds all lines of the line set.
+     */
+    public void addAll(LineSet lines) {
+        for (int i = 0; i < lines.size(); i++) {
+            add(lines.getTheta(i), lines.getRho(i));
+        }
+    }
+
+    /**
+     * Adds all lines of the vector.
+     */
+    public void addAll(Vector<HoughLine> lines) {
+        for (int i = 0; i < lines.size(); i++) {
+            HoughLine line = lines.elementAt(i);
+            add(line.getTheta(), line.getR());
+        }
+    }
+
+    /**
+     * Draws the lines in red on the image (in OpenCV's org.opencv.core.Mat format with 4 channels).
+     */
+    public void render(Mat image) {
+        int regionWidth = right - left;
+        int regionHeight = bottom - top;
+        if (size == 0 || regionWidth <= 0 || regionHeight <= 0) {
+            return;
+        }
+        int length = 4 * regionWidth * regionHeight;
+        if (bytes == null || bytes.length != length) {
+            bytes = new byte[length];
+        }
+
+        Mat region = image.submat(top, bottom, left, right);
+        region.get(0, 0, bytes);
+        for (int i = 0; i < size; i++) {
+            rasterize(thetas[i], rhos[i], null, 0);
+        }
+        region.put(0, 0, bytes);
+        region.release();
+    }
+
+    /**
+     * Draws the lines on the image with the RGB colour of your choice.
+     */
+    public void render(Bitmap image, int color) {
+        int regionWidth = right - left;
+        int regionHeight = bottom - top;
+        if (size == 0 || regionWidth <= 0 || regionHeight <= 0) {
+            return;
+        }
+        int length = regionWidth * regionHeight;
+        if (colors == null || colors.length != length) {
+            colors = new int[length];
+        }
+
+        image.getPixels(colors, 0, regionWidth, left, top, regionWidth, regionHeight);
+        for (int i = 0; i < size; i++) {
+            rasterize(thetas[i], rhos[i], colors, color);
+        }
+        image.setPixels(colors, 0, regionWidth, left, top, regionWidth, regionHeight);
+    }
+
+    /**
+     * Sets pixels of a line in the region buffer, colours if they are given, otherwise bytes. Pixels are the same as HoughLine
+     * draws: one per row for vertical-ish lines and one per column for horizontal-ish lines.
+     */
+    private void rasterize(double theta, double r, int[] pixels, int color) {
+        double sin = Math.sin(theta);
+        double cos = Math.cos(theta);
+        double rho = r - houghHeight;
+        boolean vertical = theta < Math.PI * 0.25 || theta > Math.PI * 0.75;
+
+        //Line is walked along y for vertical-ish lines and along x otherwise, the other coordinate has to stay in the region
+        double along = vertical ? sin : cos;
+        double across = vertical ? cos : sin;
+        float alongCenter = vertical ? centerY : centerX;
+        float acrossCenter = vertical ? centerX : centerY;
+        int from = vertical ? top : left;
+        int to = vertical ? bottom : right;
+        int low = vertical ? left : top;
+        int high = vertical ? right : bottom;
+
+        //Clip the walk to the steps where the other coordinate is in the region, one step more to both sides for rounding
+        if (along != 0) {
+            double first = (rho - (low - 1 - acrossCenter) * across) / along + alongCenter;
+            double last = (rho - (high + 1 - acrossCenter) * across) / along + alongCenter;
+            from = Math.max(from, (int) Math.floor(Math.min(first, last)));
+            to = Math.min(to, (int) Math.ceil(Math.max(first, last)) + 1);
+        }
+
+        int regionWidth = right - left;
+        for (int a = from; a < to; a++) {
+            int b = (int) (((rho - ((a - alongCenter) * along)) / across) + acrossCenter);
+            if (b < low || b >= high) {
+                continue;
+            }
+            int x = vertical ? b : a;
+            int y = vertical ? a : b;
+            int pixel = (y - top) * regionWidth + (x - left);
+            if (pixels != null) {
+                pixels[pixel] = color;
+            } else {
+                bytes[4 * pixel] = COLOR[0];
+                bytes[4 * pixel + 1] = COLOR[1];
+                bytes[4 * pixel + 2] = COLOR[2];
+                bytes[4 * pixel + 3] = COLOR[3];
+            }
+        }
+    }
+}
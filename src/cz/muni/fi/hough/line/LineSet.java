@@ -0,0 +1,176 @@
+package cz.muni.fi.hough.line;
+
+import org.opencv.core.Mat;
+
+/**
+ * Reusable set of lines detected by the hough transform, kept in primitive arrays instead of HoughLine objects. The set holds at
+ * most capacity lines with the most votes: while lines are added it is a min-heap by votes, so a line weaker than all kept ones is
+ * refused in constant time and a stronger one replaces the weakest in logarithmic time. After sort, lines are ordered from the one
+ * with most votes.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class LineSet {
+
+    //Angle of the normal of every line
+    private double[] thetas;
+
+    //Distance of every line from the centre, in the same representation as HoughLine
+    private double[] rhos;
+
+    //Votes of every line
+    private int[] votes;
+
+    //Number of lines in the set
+    private int size;
+
+    //Maximum number of lines kept
+    private int capacity;
+
+    /**
+     * @param capacity maximum number of lines kept
+     */
+    public LineSet(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Changes maximum number of lines kept and removes all lines.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        if (thetas == null || thetas.length < this.capacity) {
+            thetas = new double[this.capacity];
+            rhos = new double[this.capacity];
+            votes = new int[this.capacity];
+        }
+        size = 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Removes all lines.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return number of lines in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if a line needs more votes than getMinVotes to be added
+     */
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * @return votes of the weakest kept line, which a new line has to exceed when the set is full
+     */
+    public int getMinVotes() {
+        return (size == 0) ? 0 : votes[0];
+    }
+
+    /**
+     * Adds a line, if the set is full it replaces the weakest line or it is refused.
+     *
+     * @return true if the line was added
+     */
+    public boolean add(double theta, double rho, int lineVotes) {
+        if (size < capacity) {
+
+            //Sift the new line up from the bottom of the heap
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (votes[parent] <= lineVotes) {
+                    break;
+                }
+                set(i, parent);
+                i = parent;
+            }
+            thetas[i] = theta;
+            rhos[i] = rho;
+            votes[i] = lineVotes;
+            return true;
+        }
+
+        if (lineVotes <= votes[0]) {
+            return false;
+        }
+
+        //Replace the weakest line and sift the new one down
+        siftDown(0, size, theta, rho, lineVotes);
+        return true;
+    }
+
+    /**
+     * Orders lines from the one with most votes. Lines can not be added after sort until the set is cleared.
+     */
+    public void sort() {
+
+        //Heap sort, the weakest line is moved behind the shrinking heap every step
+        for (int end = size - 1; end > 0; end--) {
+            double theta = thetas[end];
+            double rho = rhos[end];
+            int lineVotes = votes[end];
+            set(end, 0);
+            siftDown(0, end, theta, rho, lineVotes);
+        }
+    }
+
+    private void siftDown(int i, int heapSize, double theta, double rho, int lineVotes) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && votes[child + 1] < votes[child]) {
+                child++;
+            }
+            if (lineVotes <= votes[child]) {
+                break;
+            }
+            set(i, child);
+            i = child;
+        }
+        thetas[i] = theta;
+        rhos[i] = rho;
+        votes[i] = lineVotes;
+    }
+
+    private void set(int to, int from) {
+        thetas[to] = thetas[from];
+        rhos[to] = rhos[from];
+        votes[to] = votes[from];
+    }
+
+    public double getTheta(int i) {
+        return thetas[i];
+    }
+
+    public double getRho(int i) {
+        return rhos[i];
+    }
+
+    public int getVotes(int i) {
+        return votes[i];
+    }
+
+    /**
+     * Draws red lines on the image (in OpenCV's org.opencv.core.Mat format). Thickness of lines is 1 px.
+     */
+    public void draw(Mat image) {
+        for (int i = 0; i < size; i++) {
+            HoughLine.draw(image, thetas[i], rhos[i]);
+        }
+    }
+}
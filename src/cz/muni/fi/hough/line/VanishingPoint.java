@@ -0,0 +1,162 @@
+package cz.muni.fi.hough.line;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the point where most of the detected lines meet, which is the horizon of road lanes. Intersections of all pairs of
+ * lines vote into a coarse 2D accumulator over the image and the area around it. Lines passing near the strongest cell are then
+ * fitted by least squares. Only the first MAX_LINES lines are used, so the estimate takes bounded time however many lines are
+ * detected. Lines are kept in primitive arrays with rho measured from the top left corner of the image.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class VanishingPoint {
+
+    //Most lines used for the estimate, detectors return the strongest lines first
+    private static final int MAX_LINES = 64;
+
+    //Size of accumulator cell in pixels
+    private static final int CELL = 8;
+
+    //Lines closer to this distance from the strongest cell in pixels are fitted
+    private static final double TOLERANCE = 2 * CELL;
+
+    //Pairs of lines with smaller angle between them are not intersected, their intersection is too uncertain
+    private static final double MIN_SIN = Math.sin(Math.toRadians(5));
+
+    //Width of input image
+    private int width;
+
+    //Height of input image
+    private int height;
+
+    //Lines as x * cos + y * sin = rho
+    private double[] cosines = new double[MAX_LINES];
+    private double[] sines = new double[MAX_LINES];
+    private double[] rhos = new double[MAX_LINES];
+    private int size;
+
+    //Accumulator of intersections covering one image width to the sides and one image height above the image
+    private int[] cells;
+    private int gridWidth, gridHeight;
+    private int gridLeft, gridTop;
+
+    //Estimated point
+    private double x, y;
+
+    public VanishingPoint(int width, int height) {
+        this.width = width;
+        this.height = height;
+        gridLeft = -width;
+        gridTop = -height;
+        gridWidth = (3 * width + CELL - 1) / CELL;
+        gridHeight = (2 * height + CELL - 1) / CELL;
+        cells = new int[gridWidth * gridHeight];
+    }
+
+    /**
+     * Removes all lines.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a line, it is ignored if there already are MAX_LINES lines.
+     *
+     * @param theta angle of the normal of the line
+     * @param rho distance of the line from the origin
+     * @param originX x coordinate of the origin rho is measured from
+     * @param originY y coordinate of the origin rho is measured from
+     */
+    public void add(double theta, double rho, double originX, double originY) {
+        if (size == MAX_LINES) {
+            return;
+        }
+        double cos = Math.cos(theta);
+        double sin = Math.sin(theta);
+        cosines[size] = cos;
+        sines[size] = sin;
+        rhos[size] = rho + originX * cos + originY * sin;
+        size++;
+    }
+
+    /**
+     * Estimates the vanishing point of the added lines.
+     *
+     * @return true if at least two lines meet in the accumulator area, the point can be read by getX and getY then
+     */
+    public boolean estimate() {
+        if (size < 2) {
+            return false;
+        }
+
+        //Vote for intersections of all pairs of lines
+        Arrays.fill(cells, 0);
+        int best = -1;
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                double det = cosines[i] * sines[j] - sines[i] * cosines[j];
+                if (Math.abs(det) < MIN_SIN) {
+                    continue;
+                }
+                double px = (rhos[i] * sines[j] - rhos[j] * sines[i]) / det;
+                double py = (cosines[i] * rhos[j] - cosines[j] * rhos[i]) / det;
+                int cx = (int) Math.floor((px - gridLeft) / CELL);
+                int cy = (int) Math.floor((py - gridTop) / CELL);
+                if (cx < 0 || cx >= gridWidth || cy < 0 || cy >= gridHeight) {
+                    continue;
+                }
+                int cell = cy * gridWidth + cx;
+                cells[cell]++;
+                if (best < 0 || cells[cell] > cells[best]) {
+                    best = cell;
+                }
+            }
+        }
+        if (best < 0) {
+            return false;
+        }
+
+        //Least squares fit of lines passing near the strongest cell
+        double bx = gridLeft + (best % gridWidth + 0.5) * CELL;
+        double by = gridTop + (best / gridWidth + 0.5) * CELL;
+        double scc = 0, scs = 0, sss = 0, scr = 0, ssr = 0;
+        int support = 0;
+        for (int i = 0; i < size; i++) {
+            if (Math.abs(bx * cosines[i] + by * sines[i] - rhos[i]) > TOLERANCE) {
+                continue;
+            }
+            scc += cosines[i] * cosines[i];
+            scs += cosines[i] * sines[i];
+            sss += sines[i] * sines[i];
+            scr += cosines[i] * rhos[i];
+            ssr += sines[i] * rhos[i];
+            support++;
+        }
+
+        double det = scc * sss - scs * scs;
+        if (support >= 2 && det > MIN_SIN * MIN_SIN) {
+            x = (scr * sss - ssr * scs) / det;
+            y = (ssr * scc - scr * scs) / det;
+        } else {
+            x = bx;
+            y = by;
+        }
+        return support >= 2;
+    }
+
+    /**
+     * @return x coordinate of the last estimate
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * @return y coordinate of the last estimate
+     */
+    public double getY() {
+        return y;
+    }
+}
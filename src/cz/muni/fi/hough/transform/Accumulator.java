@@ -0,0 +1,286 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+
+/**
+ * Hough array of rows and columns stored in one flat contiguous array, cell [row][column] at index row * columns + column. Cells
+ * are unsigned bytes, shorts or ints, narrow cells saturate at their maximum instead of overflowing, so an array of bytes takes a
+ * quarter of the memory of ints but cannot count more than 255 votes.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public abstract class Accumulator {
+
+    //Sizes of cells in bytes
+    public static final int BYTE = 1, SHORT = 2, INT = 4;
+
+    //Number of rows and columns
+    protected final int rows, columns;
+
+    protected Accumulator(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * @param cellBytes size of cells, BYTE, SHORT or INT
+     * @return accumulator with all cells zero
+     */
+    public static Accumulator create(int cellBytes, int rows, int columns) {
+        switch (cellBytes) {
+            case BYTE:
+                return new ByteAccumulator(rows, columns);
+            case SHORT:
+                return new ShortAccumulator(rows, columns);
+            case INT:
+                return new IntAccumulator(rows, columns);
+            default:
+                throw new IllegalArgumentException("Unsupported cell size: " + cellBytes);
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return size of cells in bytes
+     */
+    public abstract int getCellBytes();
+
+    /**
+     * @return memory taken by the cells in bytes
+     */
+    public long getBytes() {
+        return (long) rows * columns * getCellBytes();
+    }
+
+    /**
+     * @return biggest value a cell can hold
+     */
+    public abstract int getMaxValue();
+
+    /**
+     * @return value of cell at index row * columns + column
+     */
+    public abstract int get(int index);
+
+    /**
+     * Adds one vote to the cell at index row * columns + column.
+     */
+    public abstract void increment(int index);
+
+    /**
+     * Adds one vote to every cell at index base + offsets[i] for i from from (inclusive) to to (exclusive), all of them have to
+     * be inside of the array.
+     */
+    public abstract void incrementAll(int base, int[] offsets, int from, int to);
+
+    /**
+     * Copies values of a row to dst.
+     */
+    public abstract void getRow(int row, int[] dst);
+
+    /**
+     * Sets values of a row to columns values of src from offset, values bigger than getMaxValue are saturated.
+     */
+    public abstract void setRow(int row, int[] src, int offset);
+
+    /**
+     * Sets all cells to zero.
+     */
+    public abstract void clear();
+
+    /**
+     * @return true if the other accumulator has the same size and cells
+     */
+    public boolean matches(Accumulator other) {
+        return other != null && other.rows == rows && other.columns == columns && other.getCellBytes() == getCellBytes();
+    }
+
+    private static final class ByteAccumulator extends Accumulator {
+
+        private final byte[] cells;
+
+        ByteAccumulator(int rows, int columns) {
+            super(rows, columns);
+            cells = new byte[rows * columns];
+        }
+
+        @Override
+        public int getCellBytes() {
+            return BYTE;
+        }
+
+        @Override
+        public int getMaxValue() {
+            return 0xff;
+        }
+
+        @Override
+        public int get(int index) {
+            return cells[index] & 0xff;
+        }
+
+        @Override
+        public void increment(int index) {
+            if (cells[index] != (byte) 0xff) {
+                cells[index]++;
+            }
+        }
+
+        @Override
+        public void incrementAll(int base, int[] offsets, int from, int to) {
+            byte[] cells = this.cells;
+            for (int i = from; i < to; i++) {
+                int index = base + offsets[i];
+                if (cells[index] != (byte) 0xff) {
+                    cells[index]++;
+                }
+            }
+        }
+
+        @Override
+        public void getRow(int row, int[] dst) {
+            int offset = row * columns;
+            for (int c = 0; c < columns; c++) {
+                dst[c] = cells[offset + c] & 0xff;
+            }
+        }
+
+        @Override
+        public void setRow(int row, int[] src, int offset) {
+            int start = row * columns;
+            for (int c = 0; c < columns; c++) {
+                cells[start + c] = (byte) Math.min(src[offset + c], 0xff);
+            }
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(cells, (byte) 0);
+        }
+    }
+
+    private static final class ShortAccumulator extends Accumulator {
+
+        //Unsigned 16 bit cells
+        private final char[] cells;
+
+        ShortAccumulator(int rows, int columns) {
+            super(rows, columns);
+            cells = new char[rows * columns];
+        }
+
+        @Override
+        public int getCellBytes() {
+            return SHORT;
+        }
+
+        @Override
+        public int getMaxValue() {
+            return Character.MAX_VALUE;
+        }
+
+        @Override
+        public int get(int index) {
+            return cells[index];
+        }
+
+        @Override
+        public void increment(int index) {
+            if (cells[index] != Character.MAX_VALUE) {
+                cells[index]++;
+            }
+        }
+
+        @Override
+        public void incrementAll(int base, int[] offsets, int from, int to) {
+            char[] cells = this.cells;
+            for (int i = from; i < to; i++) {
+                int index = base + offsets[i];
+                if (cells[index] != Character.MAX_VALUE) {
+                    cells[index]++;
+                }
+            }
+        }
+
+        @Override
+        public void getRow(int row, int[] dst) {
+            int offset = row * columns;
+            for (int c = 0; c < columns; c++) {
+                dst[c] = cells[offset + c];
+            }
+        }
+
+        @Override
+        public void setRow(int row, int[] src, int offset) {
+            int start = row * columns;
+            for (int c = 0; c < columns; c++) {
+                cells[start + c] = (char) Math.min(src[offset + c], Character.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(cells, (char) 0);
+        }
+    }
+
+    private static final class IntAccumulator extends Accumulator {
+
+        private final int[] cells;
+
+        IntAccumulator(int rows, int columns) {
+            super(rows, columns);
+            cells = new int[rows * columns];
+        }
+
+        @Override
+        public int getCellBytes() {
+            return INT;
+        }
+
+        @Override
+        public int getMaxValue() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int get(int index) {
+            return cells[index];
+        }
+
+        @Override
+        public void increment(int index) {
+            cells[index]++;
+        }
+
+        @Override
+        public void incrementAll(int base, int[] offsets, int from, int to) {
+            int[] cells = this.cells;
+            for (int i = from; i < to; i++) {
+                cells[base + offsets[i]]++;
+            }
+        }
+
+        @Override
+        public void getRow(int row, int[] dst) {
+            System.arraycopy(cells, row * columns, dst, 0, columns);
+        }
+
+        @Override
+        public void setRow(int row, int[] src, int offset) {
+            System.arraycopy(src, offset, cells, row * columns, columns);
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(cells, 0);
+        }
+    }
+}
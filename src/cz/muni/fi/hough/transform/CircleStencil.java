@@ -0,0 +1,183 @@
+package cz.muni.fi.hough.transform;
+
+/**
+ * Integer offsets of pixels of a circle with given radius, rasterized by the midpoint circle algorithm. Every pixel is stored
+ * once, sorted by rows, so voting for centers of circles is a sequence of offset additions with bounds of the hough array
+ * checked once per row of the circle, or not at all for edge points far from the borders. An edge point votes once for every
+ * pixel of the circle, about 2 * pi * radius votes.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class CircleStencil {
+
+    //Stencils created so far, indexed by radius
+    private static CircleStencil[] cache = new CircleStencil[0];
+
+    //Radius of the circle
+    private final int radius;
+
+    //Offsets of pixels from the center, sorted by dy and then by dx
+    private final int[] dx;
+    private final int[] dy;
+
+    //Index of the first offset of every row from -radius to radius, and the number of offsets at the end
+    private final int[] rowStart;
+
+    //Smallest and biggest dx of every row
+    private final int[] rowMinDx;
+    private final int[] rowMaxDx;
+
+    /**
+     * @return stencil of the radius, created once and shared
+     */
+    public static synchronized CircleStencil get(int radius) {
+        if (radius >= cache.length) {
+            CircleStencil[] grown = new CircleStencil[Math.max(radius + 1, 2 * cache.length)];
+            System.arraycopy(cache, 0, grown, 0, cache.length);
+            cache = grown;
+        }
+        if (cache[radius] == null) {
+            cache[radius] = new CircleStencil(radius);
+        }
+        return cache[radius];
+    }
+
+    public CircleStencil(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative: " + radius);
+        }
+        this.radius = radius;
+        int side = 2 * radius + 1;
+
+        //Midpoint circle algorithm walks one octant, the other ones are mirrored, pixels shared by octants are marked once
+        boolean[] marked = new boolean[side * side];
+        int x = radius;
+        int y = 0;
+        int error = 1 - radius;
+        while (x >= y) {
+            mark(marked, side, x, y);
+            mark(marked, side, y, x);
+            mark(marked, side, -y, x);
+            mark(marked, side, -x, y);
+            mark(marked, side, -x, -y);
+            mark(marked, side, -y, -x);
+            mark(marked, side, y, -x);
+            mark(marked, side, x, -y);
+            y++;
+            if (error < 0) {
+                error += 2 * y + 1;
+            } else {
+                x--;
+                error += 2 * (y - x) + 1;
+            }
+        }
+
+        int size = 0;
+        for (boolean pixel : marked) {
+            if (pixel) {
+                size++;
+            }
+        }
+
+        //Scanning the grid by rows gives offsets sorted by dy and dx
+        dx = new int[size];
+        dy = new int[size];
+        rowStart = new int[side + 1];
+        rowMinDx = new int[side];
+        rowMaxDx = new int[side];
+        int i = 0;
+        for (int row = 0; row < side; row++) {
+            rowStart[row] = i;
+            for (int column = 0; column < side; column++) {
+                if (marked[row * side + column]) {
+                    dx[i] = column - radius;
+                    dy[i] = row - radius;
+                    i++;
+                }
+            }
+            rowMinDx[row] = dx[rowStart[row]];
+            rowMaxDx[row] = dx[i - 1];
+        }
+        rowStart[side] = i;
+    }
+
+    private static void mark(boolean[] marked, int side, int x, int y) {
+        int radius = side / 2;
+        marked[(y + radius) * side + x + radius] = true;
+    }
+
+    /**
+     * @param height number of columns of the accumulator votes go to
+     * @return offsets of cells voted for by the pixels in an accumulator [a][b] with height columns, relative to the cell of the
+     *         edge point x in the voted row
+     */
+    public int[] getOffsets(int height) {
+        int[] offsets = new int[dx.length];
+        for (int i = 0; i < dx.length; i++) {
+            offsets[i] = -dx[i] * height;
+        }
+        return offsets;
+    }
+
+    /**
+     * Votes for all centers of circles passing through the edge point into 2D hough array [a][b].
+     *
+     * @param array hough array with a rows and b columns
+     * @param offsets offsets of cells from getOffsets for the columns of the array
+     * @param x coordinate of the edge point
+     * @param y coordinate of the edge point
+     * @param fromB first voted b, inclusive
+     * @param toB last voted b, exclusive
+     */
+    public void vote(Accumulator array, int[] offsets, int x, int y, int fromB, int toB) {
+        int width = array.getRows();
+        int height = array.getColumns();
+        int firstRow = Math.max(0, y - toB + 1 + radius);
+        int lastRow = Math.min(2 * radius, y - fromB + radius);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int b = y - row + radius;
+            int from = rowStart[row];
+            int to = rowStart[row + 1];
+            int base = x * height + b;
+
+            //Pixels of a row are sorted by dx, so the ones with a = x - dx inside of the array are a run of them
+            if (x - rowMaxDx[row] < 0 || x - rowMinDx[row] >= width) {
+                while (from < to && x - dx[from] >= width) {
+                    from++;
+                }
+                while (to > from && x - dx[to - 1] < 0) {
+                    to--;
+                }
+            }
+            array.incrementAll(base, offsets, from, to);
+        }
+    }
+
+    /**
+     * @return radius of the circle
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return number of pixels of the circle, which is the number of votes of one edge point far from the borders
+     */
+    public int size() {
+        return dx.length;
+    }
+
+    /**
+     * @return x offsets of pixels from the center, sorted by rows, not to be modified
+     */
+    int[] getDx() {
+        return dx;
+    }
+
+    /**
+     * @return y offsets of pixels from the center, sorted by rows, not to be modified
+     */
+    int[] getDy() {
+        return dy;
+    }
+}
@@ -0,0 +1,358 @@
+package cz.muni.fi.hough.transform;
+
+import org.opencv.core.Mat;
+
+/**
+ * Edge pixels of binary image stored as packed coordinates. Image is read in one bulk call and scanned row by row, so every
+ * transform can vote only for the edge points instead of scanning whole image again.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class EdgePointSet {
+
+    //Squared magnitude of gradient below which the direction of edge is considered unknown
+    private static final int MIN_GRADIENT = 64;
+
+    //Width of input image
+    private int width;
+
+    //Height of input image
+    private int height;
+
+    //Coordinates of edge points packed as (y << 16) | x, ordered by rows
+    private int[] points;
+
+    //Number of edge points
+    private int size;
+
+    //Bytes of input image reused between frames
+    private byte[] buffer;
+
+    //Columns with edge points of the downscaled row being built, cleared after every row
+    private byte[] columnMarks;
+
+    //Rows of the last extracted region
+    private int rowStart, rowEnd;
+
+    //Theta index of gradient direction of every edge point, -1 if the gradient is too weak
+    private short[] orientations;
+
+    //Number of discrete theta values the orientations were computed for, 0 if they were not computed
+    private int thetas;
+
+    //Bytes of greyscale image reused between frames
+    private byte[] grayBuffer;
+
+    public EdgePointSet() {
+        points = new int[1024];
+    }
+
+    /**
+     * Extracts edge points from whole image.
+     *
+     * @param image
+     */
+    public EdgePointSet(Mat image) {
+        this();
+        extract(image);
+    }
+
+    /**
+     * Extracts edge points from rows between rowStart (inclusive) and rowEnd (exclusive) of image.
+     *
+     * @param image
+     * @param rowStart
+     * @param rowEnd
+     */
+    public EdgePointSet(Mat image, int rowStart, int rowEnd) {
+        this();
+        extract(image, rowStart, rowEnd, 0, image.cols());
+    }
+
+    /**
+     * Extracts edge points from whole image. All pixels that are not black are counted as edges.
+     *
+     * @param image
+     */
+    public void extract(Mat image) {
+        extract(image, 0, image.rows(), 0, image.cols());
+    }
+
+    /**
+     * Extracts edge points from region of image given by row and column range (start inclusive, end exclusive).
+     *
+     * @param image
+     * @param rowStart
+     * @param rowEnd
+     * @param colStart
+     * @param colEnd
+     */
+    public void extract(Mat image, int rowStart, int rowEnd, int colStart, int colEnd) {
+        int channels = image.channels();
+        int length = (rowEnd - rowStart) * image.cols() * channels;
+
+        if (buffer == null || buffer.length != length) {
+            buffer = new byte[length];
+        }
+
+        //Read all rows of region at once
+        if (length > 0) {
+            image.get(rowStart, 0, buffer);
+        }
+
+        extract(buffer, image.cols(), image.rows(), channels, rowStart, rowEnd, colStart, colEnd);
+    }
+
+    /**
+     * Extracts edge points from raw bytes of image. Data holds rows between rowStart and rowEnd, each row is width * channels
+     * bytes long and only first channel of every pixel is checked.
+     *
+     * @param data
+     * @param width
+     * @param height
+     * @param channels
+     * @param rowStart
+     * @param rowEnd
+     * @param colStart
+     * @param colEnd
+     */
+    public void extract(byte[] data, int width, int height, int channels, int rowStart, int rowEnd, int colStart, int colEnd) {
+        this.width = width;
+        this.height = height;
+        this.rowStart = rowStart;
+        this.rowEnd = rowEnd;
+        size = 0;
+        thetas = 0;
+
+        int stride = width * channels;
+        for (int y = rowStart; y < rowEnd; y++) {
+            int offset = (y - rowStart) * stride;
+            for (int x = colStart; x < colEnd; x++) {
+
+                //If pixel is white = edge
+                if (data[offset + x * channels] != 0) {
+                    if (size == points.length) {
+                        int[] grown = new int[size * 2];
+                        System.arraycopy(points, 0, grown, 0, size);
+                        points = grown;
+                    }
+                    points[size++] = (y << 16) | x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces edge points by the edge points of other set downscaled by a factor. Pixel of the downscaled image is an edge if
+     * any of the scale * scale pixels it covers is an edge.
+     *
+     * @param source edge points of the full image
+     * @param scale downscaling factor
+     */
+    public void downscale(EdgePointSet source, int scale) {
+        width = (source.width + scale - 1) / scale;
+        height = (source.height + scale - 1) / scale;
+        rowStart = source.rowStart / scale;
+        rowEnd = (source.rowEnd + scale - 1) / scale;
+        size = 0;
+        thetas = 0;
+
+        //Image bytes in buffer are not cleared, so columns are marked in their own array
+        if (columnMarks == null || columnMarks.length < width) {
+            columnMarks = new byte[width];
+        }
+        byte[] marks = columnMarks;
+
+        int i = 0;
+        while (i < source.size) {
+
+            //Mark columns of all edge points in the rows covered by one downscaled row
+            int y = source.getY(i) / scale;
+            int last = source.firstInRow((y + 1) * scale);
+            for (; i < last; i++) {
+                marks[source.getX(i) / scale] = 1;
+            }
+
+            //Marked columns are added in order and cleared for the next row
+            for (int x = 0; x < width; x++) {
+                if (marks[x] != 0) {
+                    marks[x] = 0;
+                    if (size == points.length) {
+                        int[] grown = new int[size * 2];
+                        System.arraycopy(points, 0, grown, 0, size);
+                        points = grown;
+                    }
+                    points[size++] = (y << 16) | x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes direction of gradient of greyscale image in every edge point with Sobel operator. Direction of gradient is
+     * the normal of the edge, so it is stored as index of theta of the line through the point.
+     *
+     * @param gray greyscale image with the same dimensions as the one edges were extracted from
+     * @param thetas number of discrete theta values in range 0 to PI
+     */
+    public void computeOrientations(Mat gray, int thetas) {
+        int from = Math.max(0, rowStart - 1);
+        int to = Math.min(height, rowEnd + 1);
+        int length = (to - from) * width;
+
+        if (grayBuffer == null || grayBuffer.length != length) {
+            grayBuffer = new byte[length];
+        }
+
+        //Read all rows around the edge points at once
+        if (length > 0) {
+            gray.get(from, 0, grayBuffer);
+        }
+
+        computeOrientations(grayBuffer, from, to, thetas);
+    }
+
+    /**
+     * Computes direction of gradient in every edge point from raw bytes of greyscale image. Data holds rows between from
+     * (inclusive) and to (exclusive), each row is width bytes long.
+     *
+     * @param gray
+     * @param from
+     * @param to
+     * @param thetas number of discrete theta values in range 0 to PI
+     */
+    public void computeOrientations(byte[] gray, int from, int to, int thetas) {
+        if (orientations == null || orientations.length < size) {
+            orientations = new short[points.length];
+        }
+
+        double scale = thetas / Math.PI;
+        for (int i = 0; i < size; i++) {
+            int x = getX(i);
+            int y = getY(i);
+
+            //Neighbours outside the image are replaced by the nearest pixel
+            int left = Math.max(x - 1, 0);
+            int right = Math.min(x + 1, width - 1);
+            int up = (Math.max(y - 1, from) - from) * width;
+            int middle = (y - from) * width;
+            int down = (Math.min(y + 1, to - 1) - from) * width;
+
+            int topLeft = gray[up + left] & 0xff;
+            int topRight = gray[up + right] & 0xff;
+            int bottomLeft = gray[down + left] & 0xff;
+            int bottomRight = gray[down + right] & 0xff;
+
+            //Fused 3x3 Sobel kernels
+            int gx = topRight + 2 * (gray[middle + right] & 0xff) + bottomRight - topLeft - 2 * (gray[middle + left] & 0xff) - bottomLeft;
+            int gy = bottomLeft + 2 * (gray[down + x] & 0xff) + bottomRight - topLeft - 2 * (gray[up + x] & 0xff) - topRight;
+
+            if (gx * gx + gy * gy < MIN_GRADIENT) {
+                orientations[i] = -1;
+            } else {
+                double angle = Math.atan2(gy, gx);
+                if (angle < 0) {
+                    angle += Math.PI;
+                }
+                int t = (int) (angle * scale + 0.5);
+                orientations[i] = (short) ((t >= thetas) ? t - thetas : t);
+            }
+        }
+
+        this.thetas = thetas;
+    }
+
+    /**
+     * @return true if orientations were computed for the current edge points
+     */
+    public boolean hasOrientations() {
+        return thetas > 0;
+    }
+
+    /**
+     * @return number of discrete theta values the orientations were computed for, 0 if they were not computed
+     */
+    public int getThetas() {
+        return thetas;
+    }
+
+    /**
+     * @param i index of edge point
+     * @return theta index of gradient direction in edge point, -1 if it is unknown
+     */
+    public int getOrientation(int i) {
+        return orientations[i];
+    }
+
+    /**
+     * @return number of edge points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of edge point
+     * @return x coordinate of edge point
+     */
+    public int getX(int i) {
+        return points[i] & 0xffff;
+    }
+
+    /**
+     * @param i index of edge point
+     * @return y coordinate of edge point
+     */
+    public int getY(int i) {
+        return points[i] >>> 16;
+    }
+
+    /**
+     * Finds first edge point in given row or below it. Points are stored row by row, so binary search is used.
+     *
+     * @param y row of the image
+     * @return index of first edge point with y coordinate not smaller than y, size() if there is none
+     */
+    public int firstInRow(int y) {
+        return firstAt(0, y);
+    }
+
+    /**
+     * Finds first edge point at given pixel or after it. Points of a row are stored from left to right, so binary search is used.
+     *
+     * @param x column of the image
+     * @param y row of the image
+     * @return index of first edge point in row y with x coordinate not smaller than x or in a row below it, size() if there is none
+     */
+    public int firstAt(int x, int y) {
+        int key = (y << 16) | x;
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (points[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Packed coordinates of edge points, only first size() values are valid.
+     *
+     * @return packed coordinates (y << 16) | x
+     */
+    public int[] getPoints() {
+        return points;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,65 @@
+package cz.muni.fi.hough.transform;
+
+/**
+ * Pre-computed values of (x - centerX) * cos(theta) and (y - centerY) * sin(theta) for every column, row and theta of the image in
+ * fixed point, so that rho of a line through a point can be computed with one integer addition and shift.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+class FixedPointTables {
+
+    //Number of fractional bits
+    static final int SHIFT = 16;
+
+    //Width of input image
+    final int width;
+
+    //Height of input image
+    final int height;
+
+    //Number of discrete theta values
+    final int thetas;
+
+    //Origin of the coordinates and offset added to rho to store negative values
+    final float centerX, centerY;
+    final int offset;
+
+    //[x * thetas + t] = ((x - centerX) * cos(theta) + offset) << SHIFT
+    final int[] xCos;
+
+    //[y * thetas + t] = ((y - centerY) * sin(theta)) << SHIFT
+    final int[] ySin;
+
+    FixedPointTables(int width, int height, float centerX, float centerY, int offset, double[] sinuses, double[] cosinuses) {
+        this.width = width;
+        this.height = height;
+        this.thetas = sinuses.length;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.offset = offset;
+
+        double one = 1 << SHIFT;
+
+        xCos = new int[width * thetas];
+        for (int x = 0; x < width; x++) {
+            for (int t = 0; t < thetas; t++) {
+                xCos[x * thetas + t] = (int) Math.floor(((x - centerX) * cosinuses[t] + offset) * one + 0.5);
+            }
+        }
+
+        ySin = new int[height * thetas];
+        for (int y = 0; y < height; y++) {
+            for (int t = 0; t < thetas; t++) {
+                ySin[y * thetas + t] = (int) Math.floor((y - centerY) * sinuses[t] * one + 0.5);
+            }
+        }
+    }
+
+    /**
+     * @return true if tables were computed for the same image and accumulator geometry
+     */
+    boolean matches(int width, int height, float centerX, float centerY, int offset, int thetas) {
+        return this.width == width && this.height == height && this.centerX == centerX && this.centerY == centerY
+                && this.offset == offset && this.thetas == thetas;
+    }
+}
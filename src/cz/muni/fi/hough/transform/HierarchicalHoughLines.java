@@ -0,0 +1,354 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+
+import cz.muni.fi.hough.line.LineSet;
+
+/**
+ * Coarse-to-fine Hough transform for detecting straight lines. Edge points vote first into a coarse hough array with 2 degrees
+ * and 4 pixels per cell. Only strong coarse cells are refined: points which voted for them or for cells near them vote again into
+ * small hough arrays with 1 degree and 1 pixel per cell. Lines are represented in the same way as in HoughLineTransform, so they
+ * can be drawn by LineSet.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class HierarchicalHoughLines {
+
+    //Discrete values of theta in fine resolution
+    private static final int MAX_THETA = 180;
+
+    //Fine theta steps per coarse cell
+    private static final int THETA_SCALE = 2;
+
+    //Fine r steps per coarse cell
+    private static final int RHO_SCALE = 4;
+
+    //Size of neighbourhood in which only the strongest refined line is kept
+    private static final int NEIGHBOURHOOD_SIZE = 4;
+
+    //Most coarse cells refined in one frame
+    private static final int MAX_CANDIDATES = 64;
+
+    private static final int COARSE_THETA = MAX_THETA / THETA_SCALE;
+
+    //Coordinates of the centre of the image
+    private float centerX, centerY;
+
+    //Half of the fine r range, added to r to store negative values
+    private int houghHeight;
+
+    //Number of fine and coarse r values
+    private int doubleHeight;
+    private int coarseHeight;
+
+    //Coarse cells to both sides over which votes of one line are spread, because coarse theta differs from the fine one
+    private int spread;
+
+    //Coarse cells to both sides of a candidate whose points are refined
+    private int near;
+
+    //Number of fine r values of one refined cell
+    private int fineRho;
+
+    //Coarse hough array [theta][r]
+    private int[][] coarseArray;
+
+    //Coarse theta, r and votes of candidate cells, ordered by theta and r
+    private int[] candidateTheta;
+    private int[] candidateRho;
+    private int[] candidateVotes;
+    private int candidates;
+
+    //Votes of candidates sorted to find the weakest one kept
+    private int[] sortedVotes;
+
+    //First candidate of every coarse theta, candidates of theta c are [thetaFirst[c], thetaFirst[c + 1])
+    private int[] thetaFirst;
+
+    //Coarse thetas having at least one candidate
+    private int[] candidateThetas;
+    private int thetas;
+
+    //Fine hough arrays of candidates [candidate][theta * fineRho + r]
+    private int[][] fineArrays;
+
+    //Fine theta, r and votes of the strongest cell of every candidate
+    private int[] lineTheta;
+    private int[] lineRho;
+    private int[] lineVotes;
+
+    //Sin and cos of fine thetas and of the centres of coarse thetas
+    private double[] sinCache, cosCache;
+    private double[] coarseSin, coarseCos;
+
+    public HierarchicalHoughLines(int width, int height) {
+        houghHeight = (int) (Math.sqrt(2) * Math.max(height, width)) / 2;
+        doubleHeight = 2 * houghHeight;
+        coarseHeight = (doubleHeight + RHO_SCALE - 1) / RHO_SCALE;
+        centerX = width / 2;
+        centerY = height / 2;
+
+        double thetaStep = Math.PI / MAX_THETA;
+
+        //Fine thetas are at most (THETA_SCALE - 1) / 2 steps away from the centre of their coarse cell, when theta turns by an angle,
+        //r of a point moves by at most 2 * sin(angle / 2) times its distance from the centre of the image, truncation of the coarse
+        //and the fine r adds a step each
+        double offset = thetaStep * (THETA_SCALE - 1) / 2;
+        spread = (int) Math.ceil((houghHeight * 2 * Math.sin(offset / 2) + 2) / RHO_SCALE);
+
+        //The strongest cell of a line is at most spread cells from the other ones
+        near = 2 * spread;
+        fineRho = (2 * near + 1) * RHO_SCALE;
+
+        coarseArray = new int[COARSE_THETA][coarseHeight];
+        candidateTheta = new int[MAX_CANDIDATES];
+        candidateRho = new int[MAX_CANDIDATES];
+        candidateVotes = new int[MAX_CANDIDATES];
+        sortedVotes = new int[MAX_CANDIDATES];
+        thetaFirst = new int[COARSE_THETA + 1];
+        candidateThetas = new int[COARSE_THETA];
+        fineArrays = new int[MAX_CANDIDATES][THETA_SCALE * fineRho];
+        lineTheta = new int[MAX_CANDIDATES];
+        lineRho = new int[MAX_CANDIDATES];
+        lineVotes = new int[MAX_CANDIDATES];
+
+        sinCache = new double[MAX_THETA];
+        cosCache = new double[MAX_THETA];
+        for (int t = 0; t < MAX_THETA; t++) {
+            sinCache[t] = Math.sin(t * thetaStep);
+            cosCache[t] = Math.cos(t * thetaStep);
+        }
+        coarseSin = new double[COARSE_THETA];
+        coarseCos = new double[COARSE_THETA];
+        for (int c = 0; c < COARSE_THETA; c++) {
+            double theta = (c * THETA_SCALE + (THETA_SCALE - 1) / 2.0) * thetaStep;
+            coarseSin[c] = Math.sin(theta);
+            coarseCos[c] = Math.cos(theta);
+        }
+    }
+
+    /**
+     * Detects lines of edge points, at most lines.getCapacity() ones with the most votes.
+     *
+     * @param points edge points of the image
+     * @param threshold how many votes should indicate line
+     * @param lines the set to fill, it is cleared first
+     * @return the same line set, ordered from the strongest line
+     */
+    public LineSet getLines(EdgePointSet points, int threshold, LineSet lines) {
+        lines.clear();
+        int size = points.size();
+
+        //Vote into coarse hough array
+        for (int c = 0; c < COARSE_THETA; c++) {
+            Arrays.fill(coarseArray[c], 0);
+        }
+        for (int i = 0; i < size; i++) {
+            float x = points.getX(i) - centerX;
+            float y = points.getY(i) - centerY;
+            for (int c = 0; c < COARSE_THETA; c++) {
+                int r = (int) (x * coarseCos[c] + y * coarseSin[c]) + houghHeight;
+                if (r >= 0 && r < doubleHeight) {
+                    coarseArray[c][r / RHO_SCALE]++;
+                }
+            }
+        }
+
+        findCandidates(threshold);
+
+        //Points which voted near a candidate vote again in fine resolution
+        for (int i = 0; i < size; i++) {
+            float x = points.getX(i) - centerX;
+            float y = points.getY(i) - centerY;
+            for (int j = 0; j < thetas; j++) {
+                int c = candidateThetas[j];
+                int r = (int) (x * coarseCos[c] + y * coarseSin[c]) + houghHeight;
+                if (r < 0 || r >= doubleHeight) {
+                    continue;
+                }
+                int b = r / RHO_SCALE;
+                for (int k = firstNear(c, b); k < thetaFirst[c + 1] && candidateRho[k] <= b + near; k++) {
+                    refine(k, x, y);
+                }
+            }
+        }
+
+        //Keep the strongest fine cell of every candidate
+        int found = 0;
+        for (int k = 0; k < candidates; k++) {
+            int[] fine = fineArrays[k];
+            int best = 0;
+            for (int j = 1; j < fine.length; j++) {
+                if (fine[j] > fine[best]) {
+                    best = j;
+                }
+            }
+            if (fine[best] > threshold) {
+                lineTheta[found] = candidateTheta[k] * THETA_SCALE + best / fineRho;
+                lineRho[found] = (candidateRho[k] - near) * RHO_SCALE + best % fineRho;
+                lineVotes[found] = fine[best];
+                found++;
+            }
+        }
+
+        //Neighbouring candidates can refine to the same line, keep only the strongest one
+        double thetaStep = Math.PI / MAX_THETA;
+        loop:
+        for (int k = 0; k < found; k++) {
+            for (int j = 0; j < found; j++) {
+                int dt = Math.abs(lineTheta[k] - lineTheta[j]);
+                dt = Math.min(dt, MAX_THETA - dt);
+                if (j != k && dt <= NEIGHBOURHOOD_SIZE && Math.abs(lineRho[k] - lineRho[j]) <= NEIGHBOURHOOD_SIZE
+                        && (lineVotes[j] > lineVotes[k] || (lineVotes[j] == lineVotes[k] && j < k))) {
+                    continue loop;
+                }
+            }
+            lines.add(lineTheta[k] * thetaStep, lineRho[k], lineVotes[k]);
+        }
+
+        lines.sort();
+        return lines;
+    }
+
+    /**
+     * Chooses coarse cells to refine. In its own coarse theta votes of a line fall into a few neighbouring cells, in the other ones
+     * they are spread over more of them, so local maxima of cells are taken. Votes of the line can be split between cells, so the
+     * sum of votes over the spread, which is never lower than votes of the line, has to be above threshold. If there are too many
+     * candidates, only the strongest ones are kept.
+     */
+    private void findCandidates(int threshold) {
+        candidates = 0;
+        for (int c = 0; c < COARSE_THETA; c++) {
+            int[] coarse = coarseArray[c];
+
+            //Sliding sum over cells [b - spread, b + spread]
+            int sum = 0;
+            for (int b = 0; b < spread && b < coarseHeight; b++) {
+                sum += coarse[b];
+            }
+            for (int b = 0; b < coarseHeight; b++) {
+                if (b + spread < coarseHeight) {
+                    sum += coarse[b + spread];
+                }
+                if (b - spread - 1 >= 0) {
+                    sum -= coarse[b - spread - 1];
+                }
+
+                int votes = coarse[b];
+                if (sum > threshold && votes > 0 && isLocalMaximum(c, b, votes)) {
+                    if (candidates == candidateTheta.length) {
+                        candidateTheta = Arrays.copyOf(candidateTheta, 2 * candidates);
+                        candidateRho = Arrays.copyOf(candidateRho, 2 * candidates);
+                        candidateVotes = Arrays.copyOf(candidateVotes, 2 * candidates);
+                    }
+                    candidateTheta[candidates] = c;
+                    candidateRho[candidates] = b;
+                    candidateVotes[candidates] = votes;
+                    candidates++;
+                }
+            }
+        }
+
+        //Keep only the strongest candidates in the order of theta, all stronger than the weakest kept one and as many of the equal
+        //ones as fit
+        if (candidates > MAX_CANDIDATES) {
+            if (sortedVotes.length < candidates) {
+                sortedVotes = new int[candidateVotes.length];
+            }
+            System.arraycopy(candidateVotes, 0, sortedVotes, 0, candidates);
+            Arrays.sort(sortedVotes, 0, candidates);
+            int minVotes = sortedVotes[candidates - MAX_CANDIDATES];
+            int ties = MAX_CANDIDATES;
+            for (int k = 0; k < candidates; k++) {
+                if (candidateVotes[k] > minVotes) {
+                    ties--;
+                }
+            }
+            int kept = 0;
+            for (int k = 0; k < candidates && kept < MAX_CANDIDATES; k++) {
+                if (candidateVotes[k] > minVotes || (candidateVotes[k] == minVotes && ties-- > 0)) {
+                    candidateTheta[kept] = candidateTheta[k];
+                    candidateRho[kept] = candidateRho[k];
+                    candidateVotes[kept] = candidateVotes[k];
+                    kept++;
+                }
+            }
+            candidates = kept;
+        }
+
+        int k = 0;
+        for (int c = 0; c <= COARSE_THETA; c++) {
+            while (k < candidates && candidateTheta[k] < c) {
+                k++;
+            }
+            thetaFirst[c] = k;
+        }
+        thetas = 0;
+        for (int c = 0; c < COARSE_THETA; c++) {
+            if (thetaFirst[c] == thetaFirst[c + 1]) {
+                continue;
+            }
+            candidateThetas[thetas++] = c;
+        }
+        for (k = 0; k < candidates; k++) {
+            Arrays.fill(fineArrays[k], 0);
+        }
+    }
+
+    /**
+     * @return first candidate of coarse theta whose r is at least b - near, candidates of one theta are ordered by r
+     */
+    private int firstNear(int c, int b) {
+        int low = thetaFirst[c];
+        int high = thetaFirst[c + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (candidateRho[mid] < b - near) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return true if no neighbouring cell of the coarse hough array is higher, of equal cells only the last one is a maximum
+     */
+    private boolean isLocalMaximum(int c, int b, int votes) {
+        for (int dc = -1; dc <= 1; dc++) {
+            if (c + dc < 0 || c + dc >= COARSE_THETA) {
+                continue;
+            }
+            int[] coarse = coarseArray[c + dc];
+            for (int db = -1; db <= 1; db++) {
+                if ((dc == 0 && db == 0) || b + db < 0 || b + db >= coarseHeight) {
+                    continue;
+                }
+                int other = coarse[b + db];
+                boolean later = dc > 0 || (dc == 0 && db > 0);
+                if (other > votes || (later && other == votes)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Votes for a point into fine hough array of candidate.
+     */
+    private void refine(int candidate, float x, float y) {
+        int[] fine = fineArrays[candidate];
+        int firstTheta = candidateTheta[candidate] * THETA_SCALE;
+        int firstRho = (candidateRho[candidate] - near) * RHO_SCALE;
+
+        for (int f = 0; f < THETA_SCALE; f++) {
+            int t = firstTheta + f;
+            int r = (int) (x * cosCache[t] + y * sinCache[t]) + houghHeight - firstRho;
+            if (r >= 0 && r < fineRho) {
+                fine[f * fineRho + r]++;
+            }
+        }
+    }
+}
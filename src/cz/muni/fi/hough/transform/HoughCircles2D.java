@@ -1,9 +1,8 @@
 package cz.muni.fi.hough.transform;
 
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.Point;
-import org.opencv.core.Scalar;
+
+import cz.muni.fi.hough.circle.CircleSet;
 
 /**
  * Hough transform for detecting circles with known radius in binary image.
@@ -24,91 +23,177 @@ public class HoughCircles2D {
     //Minimum distance between two different radii
     private int distance;
 
-    //Hough array [height][width] for interpreting circles in polar coordinates
-    private int[][] houghSpace;
+    //Hough array [a][b] of centers
+    private Accumulator houghSpace;
 
     //How many votes for point in hough array should indicate circle
     private int threshold;
 
-    //Cached sin and cos values
-    private double[] sinuses;
-    private double[] cosinuses;
+    //Offsets of pixels of the circle with known radius and of the cells they vote for
+    private CircleStencil stencil;
+    private int[] offsets;
+
+    //Finds local maxima of hough array
+    private PeakFinder peakFinder = new PeakFinder();
+
+    //Flat array the native kernel votes into, null if the kernel is not used
+    private int[] nativeVotes;
 
     public HoughCircles2D(Mat image, int threshold, int r, int distance) {
-        width = image.cols();
-        height = image.rows();
-        int theta = 180;
+        this(new EdgePointSet(image), threshold, r, distance);
+    }
+
+    public HoughCircles2D(EdgePointSet points, int threshold, int r, int distance) {
+        this(points, threshold, r, distance, null);
+    }
+
+    public HoughCircles2D(EdgePointSet points, int threshold, int r, int distance, VotingPool pool) {
+        this(points, threshold, r, distance, pool, false);
+    }
+
+    public HoughCircles2D(EdgePointSet points, int threshold, int r, int distance, VotingPool pool, boolean useNative) {
+        this(points, threshold, r, distance, pool, useNative, Accumulator.INT);
+    }
+
+    public HoughCircles2D(EdgePointSet points, int threshold, int r, int distance, VotingPool pool, boolean useNative, int cellBytes) {
+        this(points, threshold, r, distance, pool, useNative, cellBytes, null);
+    }
+
+    /**
+     * @param points edge points of the input image
+     * @param threshold
+     * @param r
+     * @param distance
+     * @param pool threads to vote with and search for circles, every thread votes only into its own band of rows of hough array, null to use the calling thread
+     * @param useNative true to vote with the native kernel (see NativeKernels), if it was loaded
+     * @param cellBytes size of cells of hough array (see Accumulator)
+     * @param nativeVotes flat array of the previous frame for the native kernel to reuse, get it by getNativeVotes(), null to allocate one
+     */
+    public HoughCircles2D(final EdgePointSet points, int threshold, int r, int distance, VotingPool pool, boolean useNative, int cellBytes,
+            int[] nativeVotes) {
+        width = points.getWidth();
+        height = points.getHeight();
         this.radius = r;
         this.distance = distance;
         this.threshold = threshold;
-        sinuses = new double[theta];
-        cosinuses = new double[theta];
+        stencil = CircleStencil.get(radius);
+        offsets = stencil.getOffsets(height);
 
-        //Pre-compute r*sin and r*cos values for every theta and known radius
-        for (int t = 0; t < theta; t++) {
-            sinuses[t] = radius * Math.sin(t);
-            cosinuses[t] = radius * Math.cos(t);
+        //Initialize hough array
+        houghSpace = Accumulator.create(cellBytes, width, height);
+        peakFinder.setPool(pool);
+
+        //Native kernel votes into one flat array, which is copied into hough array afterwards. It does not have to be cleared,
+        //as the kernel overwrites all of it
+        if (useNative && NativeKernels.isAvailable()) {
+            this.nativeVotes = (nativeVotes != null && nativeVotes.length == width * height) ? nativeVotes : new int[width * height];
         }
+        final int[] votes = this.nativeVotes;
 
-        //Initialize hough array
-        houghSpace = new int[width][height];
-
-        //Loop through every pixel in input image
-        for (int x = 0; x < width - distance; x++) {
-            for (int y = 0; y < height - distance; y++) {
-
-                //If pixel is white = edge
-                double[] color = image.get(y, x);
-                if (color[0] != 0) {
-
-                    /* Parametric form of circle: x = a + r*cos(theta), y = b + r*sin(theta)
-                     * Conversion from cartesian to polar coordinates: 
-                     * a = x - r*cos(theta), b = y - r*sin(theta)
-                     */
-                    for (int t = 0; t < theta; t++) {
-                        int a = (int) (x - cosinuses[t]);
-                        int b = (int) (y - sinuses[t]);
-
-                        //If a and b are inside array bounds
-                        if (a > 0 && a <= x && b > 0 && b <= y) {
-
-                            //Increase vote by one
-                            houghSpace[a][b] = houghSpace[a][b] + 1;
-                        }
-                    }
+        if (pool == null) {
+            vote(points, votes, 0, height);
+        } else {
+
+            //Rows of hough array are split between threads, so no merge is needed
+            pool.execute(new VotingPool.Task() {
+                @Override
+                public void run(int slice, int slices) {
+                    vote(points, votes, VotingPool.from(slice, slices, height), VotingPool.from(slice + 1, slices, height));
                 }
+            });
+        }
+
+        if (votes != null) {
+            for (int a = 0; a < width; a++) {
+                houghSpace.setRow(a, votes, a * height);
             }
         }
     }
 
     /**
-     * Draws detected circles to the image.
-     *
-     * @param image
+     * @return flat array the native kernel voted into, to be passed to the transform of the next frame, null if it was not used
      */
-    public void drawCircles(Mat image) {
+    public int[] getNativeVotes() {
+        return nativeVotes;
+    }
 
-        //Loop through accumulator hough array
-        for (int x = 0; x < width - distance; x++) {
-            for (int y = 0; y < height - distance; y++) {
+    /**
+     * Votes for edge points into rows of hough array between fromB (inclusive) and toB (exclusive), into the flat array with the native kernel if it is given.
+     */
+    private void vote(EdgePointSet points, int[] votes, int fromB, int toB) {
+        if (votes == null) {
+            vote(points, fromB, toB);
+            return;
+        }
+        NativeKernels.voteCircles(points.getPoints(), points.firstInRow(fromB - radius), points.firstInRow(toB + radius), votes,
+                width, height, stencil.getDx(), stencil.getDy(), width - distance, height - distance, fromB, toB);
+    }
 
-                //If point has more votes than threshold, it strongly indicates circle
-                if (houghSpace[x][y] > threshold) {
-                    Point center = new Point(x, y);
+    /**
+     * Votes for edge points into rows of hough array between fromB (inclusive) and toB (exclusive).
+     */
+    private void vote(EdgePointSet points, int fromB, int toB) {
 
-                    //Draw the circle in green color and thickness of 3px
-                    Core.circle(image, center, radius, new Scalar(0, 255, 0), 3);
+        //Votes land at most radius rows above and below the edge point
+        int last = points.firstInRow(toB + radius);
 
-                    //Draw the center in red color
-                    Core.line(image, center, center, new Scalar(255, 0, 0), 3);
+        //Loop through every edge point of the input image which can vote into the rows
+        for (int i = points.firstInRow(fromB - radius); i < last; i++) {
+            int x = points.getX(i);
+            int y = points.getY(i);
 
-                    //Increase coordinates to avoid drawing near local maxima 
-                    //and keep minimum distance between two different radii
-                    x += distance;
-                    y += distance;
-                }
+            //Skip points near right and bottom border
+            if (x >= width - distance || y >= height - distance) {
+                continue;
+            }
+
+            //Centers of circles through the point lie on a circle of the same radius around it, a = x - dx, b = y - dy
+            stencil.vote(houghSpace, offsets, x, y, fromB, toB);
+        }
+    }
+
+    /**
+     * @return votes of the cell of hough array for center a, b
+     */
+    int getVotes(int a, int b) {
+        return houghSpace.get(a * height + b);
+    }
+
+    /**
+     * Finds circles in hough array.
+     *
+     * @param circles set the circles are added to, ordered from the one with most votes
+     * @return the set
+     */
+    public CircleSet findCircles(CircleSet circles) {
+        circles.clear();
+
+        //Find local maxima of hough array with more votes than threshold, they strongly indicate circles
+        int peaks = peakFinder.find(houghSpace, threshold, distance, distance, false);
+
+        for (int i = 0; i < peaks; i++) {
+            int x = peakFinder.getRow(i);
+            int y = peakFinder.getColumn(i);
+
+            //Skip centers near right and bottom border
+            if (x >= width - distance || y >= height - distance) {
+                continue;
             }
+            circles.add(x, y, radius, peakFinder.getValue(i));
         }
+
+        //Maxima on plateaus of equal votes are all found, only one center is kept in distance
+        circles.suppress(distance);
+        return circles;
+    }
+
+    /**
+     * Draws detected circles to the image.
+     *
+     * @param image
+     */
+    public void drawCircles(Mat image) {
+        findCircles(new CircleSet()).draw(image);
     }
 
 }
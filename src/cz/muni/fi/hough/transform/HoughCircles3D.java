@@ -1,12 +1,12 @@
 package cz.muni.fi.hough.transform;
 
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.Point;
-import org.opencv.core.Scalar;
+
+import cz.muni.fi.hough.circle.CircleSet;
 
 /**
- * Hough transform for detecting circles with unknown radius in binary image.
+ * Hough transform for detecting circles with unknown radius in binary image. Every searched radius has its own contiguous 2D hough
+ * array, so radii can be voted for and searched by different threads without sharing any memory they write to.
  *
  * @author Jakub Medveck-Heretik
  */
@@ -30,99 +30,139 @@ public class HoughCircles3D {
     //Increment radius by step
     private int stepRadius;
 
-    //Hough array [height][width][radius] for interpreting circles in polar coordinates
-    private int[][][] houghSpace;
+    //Hough arrays [a][b] of every searched radius, radius minRadius + k * stepRadius has array k
+    private Accumulator[] houghSpace;
+
+    //Size of cells of hough arrays
+    private int cellBytes;
 
     //How many votes for point in hough array should indicate circle
     private int threshold;
 
-    //Cached sin and cos values
-    private double[] sinuses;
-    private double[] cosinuses;
+    //Offsets of pixels of circles of every searched radius
+    private CircleStencil[] stencils;
+
+    //Finds local maxima of hough array
+    private PeakFinder peakFinder = new PeakFinder();
 
     public HoughCircles3D(Mat image, int threshold, int minRadius, int maxRadius, int distance) {
-        width = image.cols();
-        height = image.rows();
-        int theta = 180;
+        this(new EdgePointSet(image), threshold, minRadius, maxRadius, distance);
+    }
+
+    public HoughCircles3D(EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance) {
+        this(points, threshold, minRadius, maxRadius, distance, null);
+    }
+
+    public HoughCircles3D(EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance, VotingPool pool) {
+        this(points, threshold, minRadius, maxRadius, distance, pool, Accumulator.INT);
+    }
+
+    public HoughCircles3D(EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance, VotingPool pool, int cellBytes) {
+        this(points, threshold, minRadius, maxRadius, distance, 10, pool, cellBytes);
+    }
+
+    /**
+     * @param points edge points of the input image
+     * @param threshold
+     * @param minRadius
+     * @param maxRadius
+     * @param distance
+     * @param stepRadius difference between two searched radii
+     * @param pool threads to vote with and search for circles, every thread votes only into arrays of its own radii, null to use the calling thread
+     * @param cellBytes size of cells of hough arrays (see Accumulator)
+     */
+    public HoughCircles3D(final EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance, int stepRadius, VotingPool pool,
+            int cellBytes) {
+        width = points.getWidth();
+        height = points.getHeight();
         this.minRadius = minRadius;
         this.maxRadius = maxRadius;
         this.distance = distance;
-        this.stepRadius = 10;
+        this.stepRadius = stepRadius;
         this.threshold = threshold;
-        sinuses = new double[theta];
-        cosinuses = new double[theta];
-
-        //Pre-compute sin and cos values for every theta
-        for (int t = 0; t < theta; t++) {
-            sinuses[t] = Math.sin(t);
-            cosinuses[t] = Math.cos(t);
+        this.cellBytes = cellBytes;
+        final int radii = Math.max(0, (maxRadius - minRadius + stepRadius - 1) / stepRadius);
+        stencils = new CircleStencil[radii];
+        houghSpace = new Accumulator[radii];
+
+        //Stencils of every searched radius
+        for (int k = 0; k < radii; k++) {
+            stencils[k] = CircleStencil.get(minRadius + k * stepRadius);
         }
 
-        //Initialize hough array
-        houghSpace = new int[width][height][maxRadius];
+        peakFinder.setPool(pool);
 
-        //Loop through every pixel in input image
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
+        if (pool == null) {
+            vote(points, 0, 1);
+        } else {
 
-                //If pixel is white = edge
-                double[] color = image.get(y, x);
-                if (color[0] != 0) {
+            //Radii are dealt to threads in turn, so bigger and smaller circles are mixed and no merge is needed
+            pool.execute(Math.max(1, Math.min(pool.getThreads(), radii)), new VotingPool.Task() {
+                @Override
+                public void run(int slice, int slices) {
+                    vote(points, slice, slices);
+                }
+            });
+        }
+    }
 
-                    //Loop through different radii of possible circles
-                    for (int r = minRadius; r < maxRadius; r = r + stepRadius) {
+    /**
+     * Votes for edge points into arrays of radii from first increased by step, one radius after another.
+     */
+    private void vote(EdgePointSet points, int first, int step) {
+        for (int k = first; k < houghSpace.length; k = k + step) {
 
-                        /* Parametric form of circle: x = a + r*cos(theta), y = b + r*sin(theta)
-                         * Conversion from cartesian to polar coordinates: 
-                         * a = x - r*cos(theta), b = y - r*sin(theta)
-                         */
-                        for (int t = 0; t < theta; t++) {
-                            int a = (int) (x - r * cosinuses[t]);
-                            int b = (int) (y - r * sinuses[t]);
+            //Initialize hough array of the radius on the thread that votes into it
+            Accumulator votes = Accumulator.create(cellBytes, width, height);
+            CircleStencil stencil = stencils[k];
+            int[] offsets = stencil.getOffsets(height);
 
-                            //If a and b are inside array bounds
-                            if (a > 0 && a <= x && b > 0 && b <= y) {
+            //Loop through every edge point of the input image
+            for (int i = 0; i < points.size(); i++) {
 
-                                //Increase vote by one
-                                houghSpace[a][b][r] = houghSpace[a][b][r] + 1;
-                            }
-                        }
-                    }
-                }
+                //Centers of circles through the point lie on a circle of the same radius around it, a = x - dx, b = y - dy
+                stencil.vote(votes, offsets, points.getX(i), points.getY(i), 0, height);
             }
+            houghSpace[k] = votes;
         }
     }
 
     /**
-     * Draws detected circles to the image.
+     * Finds circles in hough arrays of all radii.
      *
-     * @param image
+     * @param circles set the circles are added to, ordered from the one with most votes
+     * @return the set
      */
-    public void drawCircles(Mat image) {
+    public CircleSet findCircles(CircleSet circles) {
+        circles.clear();
 
-        //Loop through accumulator hough array
-        for (int x = 0; x < width - distance; x++) {
-            for (int y = 0; y < height - distance; y++) {
-                for (int r = minRadius; r < maxRadius; r = r + stepRadius) {
+        //Find local maxima of hough array with more votes than threshold, they strongly indicate circles,
+        //the neighbourhood covers center and neighbouring radii
+        int peaks = peakFinder.find(houghSpace, threshold, distance, distance, 1, false);
 
-                    //If point has more votes than threshold, it strongly indicates circle
-                    if (houghSpace[x][y][r] > threshold) {
-                        Point center = new Point(x, y);
+        for (int i = 0; i < peaks; i++) {
+            int x = peakFinder.getRow(i);
+            int y = peakFinder.getColumn(i);
 
-                        //Draw the circle in green color and thickness of 3px
-                        Core.circle(image, center, r, new Scalar(0, 255, 0), 3);
-
-                        //Draw the center in red color
-                        Core.line(image, center, center, new Scalar(255, 0, 0), 3);
-
-                        //Increase coordinates to avoid drawing near local maxima 
-                        //and keep minimum distance between two different radii
-                        x += distance;
-                        y += distance;
-                    }
-                }
+            //Skip centers near right and bottom border
+            if (x >= width - distance || y >= height - distance) {
+                continue;
             }
+            circles.add(x, y, minRadius + peakFinder.getLayer(i) * stepRadius, peakFinder.getValue(i));
         }
+
+        //Keep minimum distance between two different centers of any radius
+        circles.suppress(distance);
+        return circles;
+    }
+
+    /**
+     * Draws detected circles to the image.
+     *
+     * @param image
+     */
+    public void drawCircles(Mat image) {
+        findCircles(new CircleSet()).draw(image);
     }
 
 }
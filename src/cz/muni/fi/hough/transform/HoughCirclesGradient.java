@@ -0,0 +1,232 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+
+import org.opencv.core.Mat;
+
+import cz.muni.fi.hough.circle.CircleSet;
+
+/**
+ * Two-stage hough transform for detecting circles with radius in a range, like CV_HOUGH_GRADIENT of OpenCV. The center of a
+ * circle lies on the gradient line of each of its edge points, so in the first stage every edge point votes into a 2D array of
+ * centers only along its gradient line, from minRadius to maxRadius to both sides. In the second stage the radius of every
+ * candidate center is chosen from a histogram of distances of edge points around it. Edge points need orientations computed
+ * (see EdgePointSet.computeOrientations).
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class HoughCirclesGradient {
+
+    //Most candidate centers whose radius is estimated, the ones with most votes are taken
+    private static final int MAX_CANDIDATES = 100;
+
+    //Width of input image
+    private int width;
+
+    //Height of input image
+    private int height;
+
+    //Smallest radius of possible circles to detect
+    private int minRadius;
+
+    //Biggest radius of possible circles to detect
+    private int maxRadius;
+
+    //Minimum distance between two different centers
+    private int distance;
+
+    //Hough array [a][b] of centers
+    private Accumulator houghSpace;
+
+    //How many edge points on a circle should indicate it
+    private int threshold;
+
+    //Cached sin and cos values of every orientation of edge points
+    private float[] sinuses;
+    private float[] cosinuses;
+
+    //Finds local maxima of hough array
+    private PeakFinder peakFinder = new PeakFinder();
+
+    //Detected circles
+    private CircleSet circles = new CircleSet();
+
+    public HoughCirclesGradient(EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance) {
+        this(points, threshold, minRadius, maxRadius, distance, null);
+    }
+
+    public HoughCirclesGradient(EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance, VotingPool pool) {
+        this(points, threshold, minRadius, maxRadius, distance, pool, Accumulator.INT);
+    }
+
+    /**
+     * @param points edge points of the input image with orientations
+     * @param threshold how many edge points on a circle should indicate it
+     * @param minRadius
+     * @param maxRadius
+     * @param distance minimum distance between two different centers
+     * @param pool threads to vote with and search for centers, every thread votes only into its own band of rows of hough array, null to use the calling thread
+     * @param cellBytes size of cells of hough array (see Accumulator)
+     */
+    public HoughCirclesGradient(final EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance, VotingPool pool,
+            int cellBytes) {
+        if (!points.hasOrientations()) {
+            throw new IllegalArgumentException("Edge points have no orientations");
+        }
+        width = points.getWidth();
+        height = points.getHeight();
+        this.minRadius = minRadius;
+        this.maxRadius = maxRadius;
+        this.distance = distance;
+        this.threshold = threshold;
+
+        //Pre-compute sin and cos values for every orientation
+        int thetas = points.getThetas();
+        sinuses = new float[thetas];
+        cosinuses = new float[thetas];
+        for (int t = 0; t < thetas; t++) {
+            sinuses[t] = (float) Math.sin(t * Math.PI / thetas);
+            cosinuses[t] = (float) Math.cos(t * Math.PI / thetas);
+        }
+
+        //Initialize hough array
+        houghSpace = Accumulator.create(cellBytes, width, height);
+        peakFinder.setPool(pool);
+
+        if (pool == null) {
+            vote(points, 0, height);
+        } else {
+
+            //Rows of hough array are split between threads, so no merge is needed
+            pool.execute(new VotingPool.Task() {
+                @Override
+                public void run(int slice, int slices) {
+                    vote(points, VotingPool.from(slice, slices, height), VotingPool.from(slice + 1, slices, height));
+                }
+            });
+        }
+
+        findCircles(points);
+    }
+
+    /**
+     * First stage, votes for edge points along their gradient lines into rows of hough array between fromB (inclusive) and toB (exclusive).
+     */
+    private void vote(EdgePointSet points, int fromB, int toB) {
+
+        //Votes land at most maxRadius rows above and below the edge point
+        int last = points.firstInRow(toB + maxRadius);
+
+        //Cells voted for along one direction, incremented together
+        int[] cells = new int[Math.max(0, maxRadius - minRadius + 1)];
+
+        for (int i = points.firstInRow(fromB - maxRadius); i < last; i++) {
+            int orientation = points.getOrientation(i);
+            if (orientation < 0) {
+                continue;
+            }
+            int x = points.getX(i);
+            int y = points.getY(i);
+            float cos = cosinuses[orientation];
+            float sin = sinuses[orientation];
+
+            //Gradient of a circle points to or from its center, so both directions are voted for
+            for (int direction = -1; direction <= 1; direction += 2) {
+                float stepX = direction * cos;
+                float stepY = direction * sin;
+                float centerX = x + 0.5f + minRadius * stepX;
+                float centerY = y + 0.5f + minRadius * stepY;
+                int count = 0;
+                for (int r = minRadius; r <= maxRadius; r++) {
+                    int a = (int) Math.floor(centerX);
+                    int b = (int) Math.floor(centerY);
+                    if (a >= 0 && a < width && b >= fromB && b < toB) {
+                        cells[count++] = a * height + b;
+                    }
+                    centerX += stepX;
+                    centerY += stepY;
+                }
+                houghSpace.incrementAll(0, cells, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Second stage, estimates radius of the strongest candidate centers and keeps circles with enough edge points.
+     */
+    private void findCircles(EdgePointSet points) {
+
+        //Rounding of gradient direction spreads votes of a center into neighbouring cells, so candidates need only half of them
+        int peaks = peakFinder.find(houghSpace, threshold / 2, distance, distance, false);
+
+        //Candidates with most votes first
+        long[] candidates = new long[peaks];
+        for (int i = 0; i < peaks; i++) {
+            candidates[i] = ((long) -peakFinder.getValue(i) << 32) | i;
+        }
+        Arrays.sort(candidates);
+        int size = Math.min(peaks, MAX_CANDIDATES);
+
+        circles.clear();
+
+        //Histogram of distances of edge points from the candidate
+        int[] histogram = new int[maxRadius + 2];
+        int minSquared = (minRadius - 1) * (minRadius - 1);
+        int maxSquared = (maxRadius + 1) * (maxRadius + 1);
+
+        for (int c = 0; c < size; c++) {
+            int peak = (int) candidates[c];
+            int a = peakFinder.getRow(peak);
+            int b = peakFinder.getColumn(peak);
+
+            Arrays.fill(histogram, 0);
+            int last = points.firstInRow(b + maxRadius + 2);
+            for (int i = points.firstInRow(b - maxRadius - 1); i < last; i++) {
+                int dx = points.getX(i) - a;
+                int dy = points.getY(i) - b;
+                int squared = dx * dx + dy * dy;
+                if (squared >= minSquared && squared < maxSquared) {
+                    int d = (int) (Math.sqrt(squared) + 0.5);
+                    if (d <= maxRadius + 1) {
+                        histogram[d]++;
+                    }
+                }
+            }
+
+            //Radius with most edge points within one pixel, relative to its length, so bigger circles are not favoured
+            int bestRadius = -1;
+            int bestSupport = 0;
+            for (int r = Math.max(minRadius, 1); r <= maxRadius; r++) {
+                int support = histogram[r - 1] + histogram[r] + histogram[r + 1];
+                if (bestRadius < 0 || (long) support * bestRadius > (long) bestSupport * r) {
+                    bestRadius = r;
+                    bestSupport = support;
+                }
+            }
+
+            if (bestRadius > 0 && bestSupport > threshold) {
+                circles.add(a, b, bestRadius, bestSupport);
+            }
+        }
+
+        //Peaks on a plateau of equal votes are all found, only the circle with most edge points is kept in distance
+        circles.suppress(distance);
+    }
+
+    /**
+     * @return detected circles ordered from the one with most edge points, votes of circles are numbers of their edge points
+     */
+    public CircleSet getCircles() {
+        return circles;
+    }
+
+    /**
+     * Draws detected circles to the image.
+     *
+     * @param image
+     */
+    public void drawCircles(Mat image) {
+        circles.draw(image);
+    }
+
+}
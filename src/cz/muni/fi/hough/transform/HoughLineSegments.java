@@ -0,0 +1,213 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+
+/**
+ * Progressive probabilistic Hough transform for detecting line segments in binary image, built on the hough array of
+ * HoughLineTransform. Edge points vote in random order and whenever a point pushes a cell above threshold, the edge map is
+ * walked along the line through the point in both directions to find end points of the segment. Points of the segment take
+ * their votes back and are not processed any more.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class HoughLineSegments {
+
+    //States of edge points
+    private static final byte POINT_WAITING = 0, POINT_VOTED = 1, POINT_REMOVED = 2;
+
+    //Hough transform used for voting
+    private HoughLineTransform transform;
+
+    //Width of input image
+    private int width;
+
+    //Height of input image
+    private int height;
+
+    //Index of edge point + 1 for every pixel of the image, 0 if pixel is not an edge
+    private int[] pointAt;
+
+    //State of every edge point
+    private byte[] pointStates;
+
+    //Random order of edge points
+    private int[] order;
+
+    private final Random random = new Random();
+
+    //End points of detected segments as x1, y1, x2, y2
+    private float[] segments;
+
+    //Number of detected segments
+    private int size;
+
+    /**
+     * @param transform Hough transform for the same image size, it is reset by every detection
+     */
+    public HoughLineSegments(HoughLineTransform transform, int width, int height) {
+        this.transform = transform;
+        this.width = width;
+        this.height = height;
+        pointAt = new int[width * height];
+        segments = new float[4 * 16];
+    }
+
+    /**
+     * Detects line segments of edge points.
+     *
+     * @param points edge points of the image
+     * @param threshold how many votes should indicate line
+     * @param minLineSize minimum length of line segment
+     * @param maxLineGap maximum gap between edge points of one line segment
+     * @param maxSegments stop after this many segments are found
+     * @return number of detected segments
+     */
+    public int detect(EdgePointSet points, int threshold, int minLineSize, int maxLineGap, int maxSegments) {
+        int count = points.size();
+        transform.reset();
+        size = 0;
+
+        if (order == null || order.length < count) {
+            order = new int[points.getPoints().length];
+            pointStates = new byte[order.length];
+        }
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            pointStates[i] = POINT_WAITING;
+            pointAt[points.getY(i) * width + points.getX(i)] = i + 1;
+        }
+
+        for (int k = 0; k < count && size < maxSegments; k++) {
+
+            //Pick a random point from the ones not processed yet
+            int j = k + random.nextInt(count - k);
+            int i = order[j];
+            order[j] = order[k];
+            order[k] = i;
+
+            if (pointStates[i] != POINT_WAITING) {
+                continue;
+            }
+
+            transform.votePoint(points, i, 1);
+            pointStates[i] = POINT_VOTED;
+
+            int cell = transform.findPeak(points, i, threshold);
+            if (cell < 0) {
+                continue;
+            }
+
+            //Direction of the line is perpendicular to its normal theta
+            double theta = transform.getTheta(cell >>> 16);
+            double dx = -Math.sin(theta);
+            double dy = Math.cos(theta);
+
+            //Step by one pixel along the major axis
+            double major = Math.max(Math.abs(dx), Math.abs(dy));
+            dx /= major;
+            dy /= major;
+
+            int x0 = points.getX(i);
+            int y0 = points.getY(i);
+
+            //Find end points of the segment in both directions
+            int forward = walk(x0, y0, dx, dy, maxLineGap);
+            int backward = walk(x0, y0, -dx, -dy, maxLineGap);
+            float x1 = (float) (x0 - dx * backward), y1 = (float) (y0 - dy * backward);
+            float x2 = (float) (x0 + dx * forward), y2 = (float) (y0 + dy * forward);
+
+            boolean goodLine = Math.abs(x2 - x1) >= minLineSize || Math.abs(y2 - y1) >= minLineSize;
+
+            //Points of the segment will not be processed any more, if the segment is long enough they take their votes back
+            remove(points, i, goodLine);
+            for (int s = 1; s <= forward; s++) {
+                removeAt(points, x0 + dx * s, y0 + dy * s, goodLine);
+            }
+            for (int s = 1; s <= backward; s++) {
+                removeAt(points, x0 - dx * s, y0 - dy * s, goodLine);
+            }
+
+            if (goodLine) {
+                if (4 * size + 4 > segments.length) {
+                    float[] grown = new float[segments.length * 2];
+                    System.arraycopy(segments, 0, grown, 0, 4 * size);
+                    segments = grown;
+                }
+                segments[4 * size] = x1;
+                segments[4 * size + 1] = y1;
+                segments[4 * size + 2] = x2;
+                segments[4 * size + 3] = y2;
+                size++;
+            }
+        }
+
+        //Clear the map of edge points for the next frame
+        for (int i = 0; i < count; i++) {
+            pointAt[points.getY(i) * width + points.getX(i)] = 0;
+        }
+
+        return size;
+    }
+
+    /**
+     * Walks from a point along the line until the gap between edge points gets longer than maxLineGap.
+     *
+     * @return number of steps to the last edge point found
+     */
+    private int walk(int x0, int y0, double dx, double dy, int maxLineGap) {
+        int last = 0;
+        int gap = 0;
+        for (int s = 1;; s++) {
+            int x = (int) Math.floor(x0 + dx * s + 0.5);
+            int y = (int) Math.floor(y0 + dy * s + 0.5);
+            if (x < 0 || x >= width || y < 0 || y >= height) {
+                break;
+            }
+
+            int p = pointAt[y * width + x] - 1;
+            if (p >= 0 && pointStates[p] != POINT_REMOVED) {
+                last = s;
+                gap = 0;
+            } else if (++gap > maxLineGap) {
+                break;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Removes edge point at the position on the line, if there is one.
+     */
+    private void removeAt(EdgePointSet points, double x, double y, boolean unvote) {
+        int p = pointAt[(int) Math.floor(y + 0.5) * width + (int) Math.floor(x + 0.5)] - 1;
+        if (p >= 0) {
+            remove(points, p, unvote);
+        }
+    }
+
+    /**
+     * Marks edge point as removed and takes its votes back if it has voted.
+     */
+    private void remove(EdgePointSet points, int p, boolean unvote) {
+        if (unvote && pointStates[p] == POINT_VOTED) {
+            transform.votePoint(points, p, -1);
+        }
+        pointStates[p] = POINT_REMOVED;
+    }
+
+    /**
+     * End points of detected segments, only first 4 * size() values are valid.
+     *
+     * @return coordinates x1, y1, x2, y2 of every segment
+     */
+    public float[] getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return number of detected segments
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -1,11 +1,13 @@
 package cz.muni.fi.hough.transform;
 
 import android.graphics.Bitmap;
+import java.util.Arrays;
 import java.util.Vector;
 
 import org.opencv.core.Mat;
 
 import cz.muni.fi.hough.line.HoughLine;
+import cz.muni.fi.hough.line.LineSet;
 
 /**
  * <p/>
@@ -65,10 +67,49 @@ public class HoughLineTransform {
     // the number of points that have been added 
     private int numPoints;
 
+    // bounding box of the points added since the last reset, only the part of the hough array it maps to has to be cleared 
+    private int minX, maxX, minY, maxY;
+
     // cache of values of sin and cos for different theta values. Has a significant performance improvement. 
     private double[] sinCache;
     private double[] cosCache;
 
+    // vote with integer additions from fixed point tables instead of double multiplications 
+    private boolean fixedPoint;
+
+    // fixed point tables of x*cos and y*sin, created when fixed point voting is first used 
+    private FixedPointTables fixedPointTables;
+
+    // vote and search for peaks with the native kernels 
+    private boolean nativeKernels;
+
+    // threads used to vote in parallel, null to vote on the calling thread 
+    private VotingPool pool;
+
+    // split work between threads by theta rows instead of by points 
+    private boolean thetaSliced;
+
+    // partial hough arrays of worker threads when the work is split by points 
+    private int[][][] partialArrays;
+
+    // points with known gradient direction vote only for thetas this many steps around it, 0 to vote for all thetas 
+    private int gradientWindow;
+
+    // finds local maxima of the hough array, with the same threads as voting 
+    private final PeakFinder peakFinder = new PeakFinder();
+
+    // part of hough space to vote into, null for all of it 
+    private LineRegion region;
+
+    // index of r stored in the first column of the hough array and the index after the last column 
+    private int rhoFrom, rhoTo;
+
+    // random order and states of edge points in probabilistic transform 
+    private final ProbabilisticVoting probabilistic;
+
+    // edge pixels of the previous frame and changes of votes in incremental voting 
+    private final IncrementalVoting incremental;
+
     /**
      * Initialises the hough transform. The dimensions of the input image are needed in order to initialise the hough array.
      *
@@ -78,6 +119,8 @@ public class HoughLineTransform {
     public HoughLineTransform(int width, int height) {
         this.width = width;
         this.height = height;
+        probabilistic = new ProbabilisticVoting(this);
+        incremental = new IncrementalVoting(width, height);
         initialise();
     }
 
@@ -92,8 +135,12 @@ public class HoughLineTransform {
         // Double the height of the hough array to cope with negative r values 
         doubleHeight = 2 * houghHeight;
 
+        // Only rows and columns of the region are allocated 
+        rhoFrom = (region == null) ? 0 : Math.max(0, region.getRhoMin() + houghHeight);
+        rhoTo = (region == null) ? doubleHeight : Math.min(doubleHeight, Math.max(rhoFrom, region.getRhoMax() + houghHeight));
+
         // Create the hough array
-        houghArray = new int[maxTheta][doubleHeight];
+        houghArray = newHoughArray();
 
         // Find edge points and vote in array 
         centerX = width / 2;
@@ -101,6 +148,7 @@ public class HoughLineTransform {
 
         // Count how many points there are 
         numPoints = 0;
+        clearBounds();
 
         // cache the values of sin and cos for faster processing 
         sinCache = new double[maxTheta];
@@ -110,6 +158,168 @@ public class HoughLineTransform {
             sinCache[t] = Math.sin(realTheta);
             cosCache[t] = Math.cos(realTheta);
         }
+
+        // fixed point tables are rebuilt for the new geometry 
+        fixedPointTables = null;
+        setFixedPoint(fixedPoint);
+        partialArrays = null;
+        incremental.invalidate();
+    }
+
+    /**
+     * Creates hough array with rows only for thetas of the region and columns only for its rho interval. Rows of other thetas are null.
+     */
+    private int[][] newHoughArray() {
+        int[][] array = new int[maxTheta][];
+        for (int t = 0; t < maxTheta; t++) {
+            if (region == null || region.containsTheta(t)) {
+                array[t] = new int[rhoTo - rhoFrom];
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Restricts the hough array to a part of hough space, lines outside of it are not voted for and can not be found. The hough array is reallocated and cleared unless the region is the same as the current one.
+     *
+     * @param region theta steps and rho relative to the centre of the image to vote for, null for the whole hough space
+     */
+    public void setRegion(LineRegion region) {
+        if (region == this.region || (region != null && region.sameAs(this.region))) {
+            return;
+        }
+        this.region = region;
+        initialise();
+    }
+
+    /**
+     * Selects the voting kernel. Fixed point voting computes r from pre-computed integer tables, so each vote is one addition and one increment of the hough array. It can find r one step lower than the double kernel for negative values of r.
+     *
+     * @param fixedPoint true for fixed point voting, false for double voting
+     */
+    public void setFixedPoint(boolean fixedPoint) {
+        if (fixedPoint && fixedPointTables == null) {
+            fixedPointTables = new FixedPointTables(width, height, centerX, centerY, houghHeight, sinCache, cosCache);
+        }
+
+        // votes of the other kernel can not be taken back exactly 
+        if (fixedPoint != this.fixedPoint) {
+            incremental.invalidate();
+        }
+        this.fixedPoint = fixedPoint;
+    }
+
+    /**
+     * Selects native kernels (see NativeKernels) for addPoints and peak search instead of the Java ones. They compute the same votes and peaks. Points voting within the gradient window and the other ways of adding points always use the Java kernels.
+     *
+     * @param useNative true to use native kernels if they were loaded
+     */
+    public void setNative(boolean useNative) {
+        this.nativeKernels = useNative && NativeKernels.isAvailable();
+        peakFinder.setNative(nativeKernels);
+    }
+
+    /**
+     * Clears the hough array so that the transform can be reused for the next frame of the same size. Only the rho range covered by the bounding box of the added points is cleared in every theta row, the sin and cos caches are kept.
+     */
+    public void reset() {
+        incremental.invalidate();
+        if (numPoints == 0) {
+            return;
+        }
+
+        for (int t = 0; t < maxTheta; t++) {
+            int from = touchedFrom(t);
+            int to = touchedTo(t);
+
+            if (houghArray[t] != null && from <= to) {
+                Arrays.fill(houghArray[t], from - rhoFrom, to - rhoFrom + 1, 0);
+            }
+        }
+
+        numPoints = 0;
+        clearBounds();
+    }
+
+    /**
+     * Selects threads used by addPoints. When the work is split by points, every thread votes into its own partial hough array and the arrays are summed in parallel afterwards. When it is split by theta, every thread votes for all points but only into its own rows of the hough array, so no merge is needed.
+     *
+     * @param pool threads to vote with, null to vote on the calling thread
+     * @param thetaSliced true to split the work by theta rows, false to split it by points
+     */
+    public void setPool(VotingPool pool, boolean thetaSliced) {
+        this.pool = pool;
+        this.thetaSliced = thetaSliced;
+        peakFinder.setPool(pool);
+    }
+
+    /**
+     * Restricts voting of points with known gradient direction (see EdgePointSet.computeOrientations) to a window of thetas around that direction. Gradient of an edge is the normal of the line through it, so the peaks stay where they are, while each point casts only 2 * window + 1 votes instead of one for every theta.
+     *
+     * @param window number of theta steps on each side of the gradient direction, 0 to vote for all thetas
+     */
+    public void setGradientWindow(int window) {
+        if (window != gradientWindow) {
+            incremental.invalidate();
+        }
+        this.gradientWindow = window;
+    }
+
+    /**
+     * Lowest index of r in theta row which could have been voted for by the points added since the last reset.
+     */
+    private int touchedFrom(int t) {
+
+        // r is linear in x and y, so its extremes over the bounding box are in the corners 
+        int r1 = Math.min(toRho(minX, minY, t), toRho(maxX, minY, t));
+        int r2 = Math.min(toRho(minX, maxY, t), toRho(maxX, maxY, t));
+
+        // fixed point voting can find r one step lower 
+        return Math.max(rhoFrom, Math.min(r1, r2) - 1);
+    }
+
+    /**
+     * Highest index of r in theta row which could have been voted for by the points added since the last reset.
+     */
+    private int touchedTo(int t) {
+        int r1 = Math.max(toRho(minX, minY, t), toRho(maxX, minY, t));
+        int r2 = Math.max(toRho(minX, maxY, t), toRho(maxX, maxY, t));
+        return Math.min(rhoTo - 1, Math.max(r1, r2));
+    }
+
+    /**
+     * Grows the bounding box of added points.
+     */
+    private void growBounds(int x, int y) {
+        if (x < minX) {
+            minX = x;
+        }
+        if (x > maxX) {
+            maxX = x;
+        }
+        if (y < minY) {
+            minY = y;
+        }
+        if (y > maxY) {
+            maxY = y;
+        }
+    }
+
+    /**
+     * Empties the bounding box of added points.
+     */
+    private void clearBounds() {
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        maxY = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Works out the index of r in the hough array for a point and theta step.
+     */
+    private int toRho(int x, int y, int t) {
+        return (int) (((x - centerX) * cosCache[t]) + ((y - centerY) * sinCache[t])) + houghHeight;
     }
 
     /**
@@ -134,18 +344,209 @@ public class HoughLineTransform {
      * @author Jakub Medveck-Heretik
      */
     public void addPoints(Mat image) {
+        addPoints(new EdgePointSet(image, image.rows() / 2, image.rows()));
+    }
 
-        // Now find edge points and update the hough array 
-        for (int x = 0; x < image.cols(); x++) {
-            for (int y = image.rows() / 2; y < image.rows(); y++) {
+    /**
+     * Adds edge points extracted from an image. The points should come from image with the same dimensions as the one passed to the constructor.
+     */
+    public void addPoints(final EdgePointSet points) {
+        final int size = points.size();
 
-                // Find non-black pixels
-                double[] color = image.get(y, x);
-                if (color[0] != 0) {
-                    addPoint(x, y);
+        for (int i = 0; i < size; i++) {
+            growBounds(points.getX(i), points.getY(i));
+        }
+        numPoints += size;
+
+        if (pool == null || pool.getThreads() < 2 || size == 0) {
+            votePoints(houghArray, points, 0, size, 0, maxTheta);
+            return;
+        }
+
+        if (thetaSliced) {
+
+            // every thread votes for all points into its own theta rows 
+            pool.execute(new VotingPool.Task() {
+                @Override
+                public void run(int slice, int slices) {
+                    int fromTheta = VotingPool.from(slice, slices, maxTheta);
+                    int toTheta = VotingPool.from(slice + 1, slices, maxTheta);
+                    votePoints(houghArray, points, 0, size, fromTheta, toTheta);
                 }
+            });
+            return;
+        }
+
+        // every thread votes for its own points, the first one straight into the hough array 
+        final int threads = pool.getThreads();
+        if (partialArrays == null || partialArrays.length != threads - 1) {
+            partialArrays = new int[threads - 1][][];
+            for (int p = 0; p < partialArrays.length; p++) {
+                partialArrays[p] = newHoughArray();
+            }
+        }
+
+        pool.execute(threads, new VotingPool.Task() {
+            @Override
+            public void run(int slice, int slices) {
+                int[][] array = (slice == 0) ? houghArray : partialArrays[slice - 1];
+                votePoints(array, points, VotingPool.from(slice, slices, size), VotingPool.from(slice + 1, slices, size), 0, maxTheta);
+            }
+        });
+
+        // sum the partial arrays into the hough array by theta rows and clear them for the next frame 
+        pool.execute(threads, new VotingPool.Task() {
+            @Override
+            public void run(int slice, int slices) {
+                int toTheta = VotingPool.from(slice + 1, slices, maxTheta);
+                for (int t = VotingPool.from(slice, slices, maxTheta); t < toTheta; t++) {
+                    int[] row = houghArray[t];
+                    if (row == null) {
+                        continue;
+                    }
+                    int from = touchedFrom(t) - rhoFrom;
+                    int to = touchedTo(t) - rhoFrom;
+                    for (int p = 0; p < partialArrays.length; p++) {
+                        int[] partialRow = partialArrays[p][t];
+                        for (int r = from; r <= to; r++) {
+                            row[r] += partialRow[r];
+                            partialRow[r] = 0;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds edge points of the next frame by updating the votes of the previous frame instead of voting for all points again. Only pixels which stopped being edges take their votes back and only pixels which became edges vote, so on a steady view the cost depends on how much of the scene changed rather than on the number of edge points. Afterwards the hough array holds the same votes as after reset and addPoints of the same points. The first frame, and the first frame after reset or a change of the region, the kernel or the gradient window, is added in full. Do not call reset between frames and do not mix it with the other ways of adding points without reset.
+     *
+     * @param points edge points of the frame, from image with the same dimensions as the one passed to the constructor
+     */
+    public void addPointsIncremental(final EdgePointSet points) {
+        if (!incremental.isValid()) {
+            reset();
+            incremental.start(points.size());
+        }
+        final int count = incremental.update(points, votesInWindow(points));
+        numPoints = points.size();
+
+        // pixels which take their votes back voted in earlier frames, so they are inside the bounding box already 
+        for (int k = 0; k < count; k++) {
+            if (incremental.getDelta(k) > 0) {
+                growBounds(incremental.getX(k), incremental.getY(k));
+            }
+        }
+
+        if (pool == null || pool.getThreads() < 2 || count == 0) {
+            voteChanges(count, 0, maxTheta);
+            return;
+        }
+
+        // changes are few, so every thread votes for all of them into its own theta rows and no merge is needed 
+        pool.execute(new VotingPool.Task() {
+            @Override
+            public void run(int slice, int slices) {
+                voteChanges(count, VotingPool.from(slice, slices, maxTheta), VotingPool.from(slice + 1, slices, maxTheta));
+            }
+        });
+    }
+
+    /**
+     * Votes for the first count changes of incremental voting into theta rows between fromTheta (inclusive) and toTheta (exclusive).
+     */
+    private void voteChanges(int count, int fromTheta, int toTheta) {
+        for (int k = 0; k < count; k++) {
+            votePoint(houghArray, incremental.getX(k), incremental.getY(k), incremental.getOrientation(k), fromTheta, toTheta, incremental.getDelta(k));
+        }
+    }
+
+    /**
+     * Probabilistic hough transform. Edge points are added in random order and as soon as a point pushes a cell of the hough array above the threshold, the line is taken and all points lying on it take their votes back and are not added any more. Adding stops when maxLines lines are found or maxFraction of the points is processed, so on busy images most of the lines are found at a fraction of the cost of adding all points. Call reset before using it for the next frame.
+     *
+     * @param points edge points of the image
+     * @param threshold how many votes should indicate line
+     * @param maxLines stop after this many lines are found
+     * @param maxFraction stop after this fraction of points is processed, 1 to process all of them
+     * @return detected lines
+     */
+    public Vector<HoughLine> addPointsProbabilistic(EdgePointSet points, int threshold, int maxLines, float maxFraction) {
+        return probabilistic.addPoints(points, threshold, maxLines, maxFraction);
+    }
+
+    /**
+     * Columns of a row of the image where edge points can have r at most one step from a line.
+     *
+     * @return first and last column packed as (fromX << 16) | toX, -1 if the line does not come near the row
+     */
+    int lineColumns(int t, int peakR, int y) {
+
+        // r before truncation lies within two steps of the line, one more for fixed point voting 
+        double low = peakR - houghHeight - 3;
+        double high = peakR - houghHeight + 3;
+        double rowR = (y - centerY) * sinCache[t];
+        if (Math.abs(cosCache[t]) <= 1e-9) {
+            return (rowR < low || rowR > high) ? -1 : width - 1;
+        }
+
+        double x1 = centerX + (low - rowR) / cosCache[t];
+        double x2 = centerX + (high - rowR) / cosCache[t];
+        int fromX = (int) Math.max(0, Math.min(width, Math.floor(Math.min(x1, x2))));
+        int toX = (int) Math.min(width - 1, Math.ceil(Math.max(x1, x2)));
+        return (fromX <= toX) ? (fromX << 16) | toX : -1;
+    }
+
+    /**
+     * Votes for an edge point into the hough array, or takes its votes back if delta is -1. Used by detectors built on top of this transform.
+     */
+    void votePoint(EdgePointSet points, int i, int delta) {
+        votePoint(houghArray, points, i, 0, maxTheta, delta);
+        if (delta > 0) {
+            growBounds(points.getX(i), points.getY(i));
+            numPoints++;
+        }
+    }
+
+    /**
+     * Finds the strongest cell above threshold an edge point votes for.
+     *
+     * @return theta step and index of r of the cell packed as (t << 16) | r, -1 if no cell is above threshold
+     */
+    int findPeak(EdgePointSet points, int i, int threshold) {
+        int x = points.getX(i);
+        int y = points.getY(i);
+        int orientation = votedOrientation(points, i);
+        int from = (orientation < 0) ? 0 : orientation - gradientWindow;
+        int to = (orientation < 0) ? maxTheta : orientation + gradientWindow + 1;
+
+        int peak = threshold;
+        int cell = -1;
+        for (int step = from; step < to; step++) {
+            int t = (step + maxTheta) % maxTheta;
+            int r = rhoIndex(x, y, t);
+            if (r >= rhoFrom && r < rhoTo && houghArray[t] != null && houghArray[t][r - rhoFrom] > peak) {
+                peak = houghArray[t][r - rhoFrom];
+                cell = (t << 16) | r;
             }
         }
+        return cell;
+    }
+
+    /**
+     * @return angle of theta step in radians
+     */
+    double getTheta(int t) {
+        return t * thetaStep;
+    }
+
+    /**
+     * Works out the index of r in the hough array for a point and theta step in the same way as the selected voting kernel.
+     */
+    int rhoIndex(int x, int y, int t) {
+        if (fixedPoint) {
+            return (fixedPointTables.xCos[x * maxTheta + t] + fixedPointTables.ySin[y * maxTheta + t]) >> FixedPointTables.SHIFT;
+        }
+        return toRho(x, y, t);
     }
 
     /**
@@ -153,8 +554,123 @@ public class HoughLineTransform {
      */
     public void addPoint(int x, int y) {
 
+        vote(houghArray, x, y, 0, maxTheta, 1);
+        growBounds(x, y);
+        numPoints++;
+    }
+
+    /**
+     * Votes for edge points between from (inclusive) and to (exclusive) into theta rows between fromTheta (inclusive) and toTheta (exclusive), with the native kernel if it is selected and the points vote for all thetas.
+     */
+    private void votePoints(int[][] array, EdgePointSet points, int from, int to, int fromTheta, int toTheta) {
+        if (nativeKernels && !votesInWindow(points)) {
+
+            // rows outside of the region are null and skipped by the kernel 
+            if (fixedPoint) {
+                NativeKernels.voteLinesFixed(points.getPoints(), from, to, array, fromTheta, toTheta, fixedPointTables.xCos, fixedPointTables.ySin, maxTheta, FixedPointTables.SHIFT, rhoFrom, rhoTo, 1);
+            } else {
+                NativeKernels.voteLines(points.getPoints(), from, to, array, fromTheta, toTheta, sinCache, cosCache, centerX, centerY, houghHeight, rhoFrom, rhoTo, 1);
+            }
+            return;
+        }
+
+        for (int i = from; i < to; i++) {
+            votePoint(array, points, i, fromTheta, toTheta, 1);
+        }
+    }
+
+    /**
+     * Votes for an edge point into theta rows between fromTheta (inclusive) and toTheta (exclusive), only within the gradient window if it is set and the direction of the point is known.
+     */
+    private void votePoint(int[][] array, EdgePointSet points, int i, int fromTheta, int toTheta, int delta) {
+        votePoint(array, points.getX(i), points.getY(i), votedOrientation(points, i), fromTheta, toTheta, delta);
+    }
+
+    /**
+     * Gradient direction an edge point votes around.
+     *
+     * @return theta step of the direction, -1 if the point votes for all thetas
+     */
+    private int votedOrientation(EdgePointSet points, int i) {
+        return votesInWindow(points) ? points.getOrientation(i) : -1;
+    }
+
+    /**
+     * @return true if points with known direction vote only within the gradient window
+     */
+    private boolean votesInWindow(EdgePointSet points) {
+        return gradientWindow > 0 && points.hasOrientations() && 2 * gradientWindow + 1 < maxTheta;
+    }
+
+    /**
+     * Votes for a point into theta rows between fromTheta (inclusive) and toTheta (exclusive), only within the gradient window around orientation unless it is -1.
+     */
+    private void votePoint(int[][] array, int x, int y, int orientation, int fromTheta, int toTheta, int delta) {
+        if (orientation < 0) {
+            vote(array, x, y, fromTheta, toTheta, delta);
+            return;
+        }
+
+        // the window can wrap around theta = 0, so it is voted as two ranges 
+        int low = orientation - gradientWindow;
+        int high = orientation + gradientWindow + 1;
+        if (low < 0) {
+            voteRange(array, x, y, low + maxTheta, maxTheta, fromTheta, toTheta, delta);
+            low = 0;
+        }
+        if (high > maxTheta) {
+            voteRange(array, x, y, 0, high - maxTheta, fromTheta, toTheta, delta);
+            high = maxTheta;
+        }
+        voteRange(array, x, y, low, high, fromTheta, toTheta, delta);
+    }
+
+    /**
+     * Votes for a point into the intersection of theta ranges.
+     */
+    private void voteRange(int[][] array, int x, int y, int low, int high, int fromTheta, int toTheta, int delta) {
+        low = Math.max(low, fromTheta);
+        high = Math.min(high, toTheta);
+        if (low < high) {
+            vote(array, x, y, low, high, delta);
+        }
+    }
+
+    /**
+     * Votes for a point into theta rows between fromTheta (inclusive) and toTheta (exclusive) of a hough array which belong to the region. Delta is added to every voted cell, so -1 takes a vote back.
+     */
+    private void vote(int[][] array, int x, int y, int fromTheta, int toTheta, int delta) {
+        if (region == null) {
+            voteKernel(array, x, y, fromTheta, toTheta, delta);
+            return;
+        }
+        for (int k = 0; k < region.getIntervals(); k++) {
+            int low = Math.max(fromTheta, region.getThetaFrom(k));
+            int high = Math.min(toTheta, region.getThetaTo(k));
+            if (low < high) {
+                voteKernel(array, x, y, low, high, delta);
+            }
+        }
+    }
+
+    /**
+     * Votes for a point into theta rows with the selected kernel.
+     */
+    private void voteKernel(int[][] array, int x, int y, int fromTheta, int toTheta, int delta) {
+        if (fixedPoint) {
+            voteFixed(array, x, y, fromTheta, toTheta, delta);
+        } else {
+            voteDouble(array, x, y, fromTheta, toTheta, delta);
+        }
+    }
+
+    /**
+     * Votes for a point with r computed in double precision.
+     */
+    private void voteDouble(int[][] array, int x, int y, int fromTheta, int toTheta, int delta) {
+
         // Go through each value of theta 
-        for (int t = 0; t < maxTheta; t++) {
+        for (int t = fromTheta; t < toTheta; t++) {
 
             //Work out the r values for each theta step 
             int r = (int) (((x - centerX) * cosCache[t]) + ((y - centerY) * sinCache[t]));
@@ -162,22 +678,42 @@ public class HoughLineTransform {
             // this copes with negative values of r 
             r += houghHeight;
 
-            if (r < 0 || r >= doubleHeight) {
+            if (r < rhoFrom || r >= rhoTo) {
                 continue;
             }
 
             // Increment the hough array 
-            houghArray[t][r]++;
+            array[t][r - rhoFrom] += delta;
 
         }
+    }
 
-        numPoints++;
+    /**
+     * Votes for a point with r looked up in fixed point tables.
+     */
+    private void voteFixed(int[][] array, int x, int y, int fromTheta, int toTheta, int delta) {
+        int[] xCos = fixedPointTables.xCos;
+        int[] ySin = fixedPointTables.ySin;
+        int xOffset = x * maxTheta;
+        int yOffset = y * maxTheta;
+
+        for (int t = fromTheta; t < toTheta; t++) {
+
+            // r already includes houghHeight, so it is not negative for points inside the image 
+            int r = (xCos[xOffset + t] + ySin[yOffset + t]) >> FixedPointTables.SHIFT;
+
+            if (r < rhoFrom || r >= rhoTo) {
+                continue;
+            }
+
+            array[t][r - rhoFrom] += delta;
+        }
     }
 
     /**
      * Once points have been added in some way this method extracts the lines and returns them as a Vector of HoughLine objects, which can be used to draw on the
      *
-     * @param percentageThreshold The percentage threshold above which lines are determined from the hough array
+     * @param threshold how many votes should indicate line
      */
     public Vector<HoughLine> getLines(int threshold) {
 
@@ -189,43 +725,97 @@ public class HoughLineTransform {
             return lines;
         }
 
-        // Search for local peaks above threshold to draw 
-        for (int t = 0; t < maxTheta; t++) {
-            loop:
-            for (int r = neighbourhoodSize; r < doubleHeight - neighbourhoodSize; r++) {
-
-                // Only consider points above threshold 
-                if (houghArray[t][r] > threshold) {
-
-                    int peak = houghArray[t][r];
-
-                    // Check that this peak is indeed the local maxima 
-                    for (int dx = -neighbourhoodSize; dx <= neighbourhoodSize; dx++) {
-                        for (int dy = -neighbourhoodSize; dy <= neighbourhoodSize; dy++) {
-                            int dt = t + dx;
-                            int dr = r + dy;
-                            if (dt < 0) {
-                                dt = dt + maxTheta;
-                            } else if (dt >= maxTheta) {
-                                dt = dt - maxTheta;
-                            }
-                            if (houghArray[dt][dr] > peak) {
-                                // found a bigger point nearby, skip 
-                                continue loop;
-                            }
-                        }
-                    }
+        // Search for local peaks above threshold to draw, theta wraps around 
+        int peaks = peakFinder.find(houghArray, threshold, neighbourhoodSize, neighbourhoodSize, true);
+        for (int i = 0; i < peaks; i++) {
+            int r = peakFinder.getColumn(i) + rhoFrom;
+            if (r < neighbourhoodSize || r >= doubleHeight - neighbourhoodSize) {
+                continue;
+            }
 
-                    // calculate the true value of theta 
-                    double theta = t * thetaStep;
+            // calculate the true value of theta 
+            double theta = peakFinder.getRow(i) * thetaStep;
 
-                    // add the line to the vector 
-                    lines.add(new HoughLine(theta, r));
+            // add the line to the vector 
+            lines.add(new HoughLine(theta, r));
+        }
 
+        return lines;
+    }
+
+    /**
+     * Extracts at most lines.getCapacity() lines with the most votes into a reusable line set, ordered from the strongest one. No objects are created per line. Cells are fed to the set while the hough array is swept, a cell weaker than all kept lines is refused before its neighbourhood is searched, so only cells which can still get into the set are compared with their neighbours. Lines are the same as the strongest ones of getLines(threshold).
+     *
+     * @param threshold how many votes should indicate line
+     * @param lines the set to fill, it is cleared first
+     * @return the same line set
+     */
+    public LineSet getLines(int threshold, LineSet lines) {
+        lines.clear();
+
+        // Only proceed if the hough array is not empty 
+        if (numPoints == 0) {
+            return lines;
+        }
+
+        for (int t = 0; t < maxTheta; t++) {
+            int[] row = houghArray[t];
+            if (row == null) {
+                continue;
+            }
+
+            // cells outside of the bounding box of the points have no votes, lines too close to the border are not taken 
+            int from = Math.max(touchedFrom(t), neighbourhoodSize) - rhoFrom;
+            int to = Math.min(touchedTo(t) + 1, doubleHeight - neighbourhoodSize) - rhoFrom;
+            for (int r = from; r < to; r++) {
+                int votes = row[r];
+                if (votes <= threshold || (lines.isFull() && votes <= lines.getMinVotes())) {
+                    continue;
+                }
+                if (isPeak(t, r, votes)) {
+                    lines.add(t * thetaStep, r + rhoFrom, votes);
                 }
             }
         }
 
+        lines.sort();
         return lines;
     }
+
+    /**
+     * @return true if no cell in the neighbourhood of the cell has more votes, theta wraps around as in getLines(threshold)
+     */
+    private boolean isPeak(int t, int r, int votes) {
+        int from = Math.max(0, r - neighbourhoodSize);
+        int to = Math.min(rhoTo - rhoFrom - 1, r + neighbourhoodSize);
+        for (int dt = -neighbourhoodSize; dt <= neighbourhoodSize; dt++) {
+            int[] row = houghArray[(t + dt + maxTheta) % maxTheta];
+            if (row == null) {
+                continue;
+            }
+            for (int c = from; c <= to; c++) {
+                if (row[c] > votes) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return votes of the cell of hough array for theta step and index of r, 0 outside of the region
+     */
+    int getVotes(int t, int r) {
+        if (houghArray[t] == null || r < rhoFrom || r >= rhoTo) {
+            return 0;
+        }
+        return houghArray[t][r - rhoFrom];
+    }
+
+    /**
+     * @return number of indexes of r in a theta row of the whole hough space
+     */
+    int getRhoSteps() {
+        return doubleHeight;
+    }
 }
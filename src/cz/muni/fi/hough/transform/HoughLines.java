@@ -1,5 +1,7 @@
 package cz.muni.fi.hough.transform;
 
+import java.util.Arrays;
+
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
@@ -21,8 +23,15 @@ public class HoughLines {
     //Maximum value of rho that hough array needs to have
     private int diagonal;
 
-    //Hough array for interpreting straight lines in polar coordinates
-    private int[][] houghSpace;
+    //Hough array [row of theta][rho - rhoFrom] for interpreting straight lines in polar coordinates
+    private Accumulator houghSpace;
+
+    //Row of hough array of every theta step, -1 outside of the region, and theta step of every row, -1 for rows between intervals
+    private int[] rowOfTheta;
+    private int[] thetaOfRow;
+
+    //Index of the cell of rho 0 in the row of every theta step of the region, rowOfTheta * columns - rhoFrom
+    private int[] rowBase;
 
     //Discrete values of thetaMax that we'll check
     private int thetaMax;
@@ -37,12 +46,65 @@ public class HoughLines {
     private double[] sinuses;
     private double[] cosinuses;
 
+    //Fixed point tables of x*cos and y*sin shared by instances for the same image size
+    private static volatile FixedPointTables sharedTables;
+
+    //Fixed point tables used by this instance
+    private FixedPointTables fixedPointTables;
+
+    //Vote with integer additions from fixed point tables
+    private boolean fixedPoint;
+
+    //Number of theta steps around gradient direction to vote for, 0 to vote for all thetas
+    private int gradientWindow;
+
+    //Size of neighbourhood in which a line has to have most votes
+    private static final int NEIGHBOURHOOD_SIZE = 4;
+
+    //Finds local maxima of hough array
+    private PeakFinder peakFinder = new PeakFinder();
+
+    //Part of hough space to vote into, null for all of it
+    private LineRegion region;
+
+    //Index of rho stored in the first column of hough array and the index after the last column
+    private int rhoFrom, rhoTo;
+
     public HoughLines(Mat image, int threshold) {
-        width = image.cols();
-        height = image.rows();
+        this(new EdgePointSet(image, image.rows() / 2, image.rows()), threshold);
+    }
+
+    public HoughLines(EdgePointSet points, int threshold) {
+        this(points, threshold, false, 0, null);
+    }
+
+    public HoughLines(EdgePointSet points, int threshold, boolean fixedPoint, int gradientWindow, VotingPool pool) {
+        this(points, threshold, fixedPoint, gradientWindow, null, pool);
+    }
+
+    public HoughLines(EdgePointSet points, int threshold, boolean fixedPoint, int gradientWindow, LineRegion region, VotingPool pool) {
+        this(points, threshold, fixedPoint, gradientWindow, region, pool, Accumulator.INT);
+    }
+
+    /**
+     * @param points edge points of the input image
+     * @param threshold
+     * @param fixedPoint if true, votes are computed with integer additions from fixed point tables instead of double multiplications
+     * @param gradientWindow if positive, points with known gradient direction vote only for thetas this many steps around it
+     * @param region theta steps and rho relative to the top left corner of the image to vote for, null for the whole hough space
+     * @param pool threads to vote with and search for lines, every thread works on its own theta rows, null to use the calling thread
+     * @param cellBytes size of cells of hough array (see Accumulator)
+     */
+    public HoughLines(final EdgePointSet points, int threshold, boolean fixedPoint, int gradientWindow, LineRegion region, VotingPool pool,
+            int cellBytes) {
+        width = points.getWidth();
+        height = points.getHeight();
         thetaMax = 180;
         thetaRad = Math.PI / thetaMax;
         this.threshold = threshold;
+        this.fixedPoint = fixedPoint;
+        this.region = region;
+        this.gradientWindow = (points.hasOrientations() && 2 * gradientWindow + 1 < thetaMax) ? gradientWindow : 0;
         sinuses = new double[thetaMax];
         cosinuses = new double[thetaMax];
 
@@ -55,32 +117,220 @@ public class HoughLines {
 
         diagonal = (int) Math.sqrt(width * width + height * height);
 
-        //Initialize hough array
-        houghSpace = new int[thetaMax][diagonal * 2];
+        //Initialize hough array, only rows and columns of the region
+        rhoFrom = (region == null) ? 0 : Math.max(0, region.getRhoMin() + diagonal);
+        rhoTo = (region == null) ? diagonal * 2 : Math.min(diagonal * 2, Math.max(rhoFrom, region.getRhoMax() + diagonal));
+        houghSpace = Accumulator.create(cellBytes, prepareRows(), rhoTo - rhoFrom);
+        rowBase = new int[thetaMax];
+        for (int t = 0; t < thetaMax; t++) {
+            rowBase[t] = rowOfTheta[t] * (rhoTo - rhoFrom) - rhoFrom;
+        }
 
-        //Loop through every pixel in bottom half of the input image
-        for (int x = 0; x < width; x++) {
-            for (int y = height / 2; y < height; y++) {
+        if (fixedPoint) {
+            prepareFixedPointTables();
+        }
 
-                //If pixel is white = edge
-                double[] color = image.get(y, x);
-                if (color[0] != 0) {
+        peakFinder.setPool(pool);
 
-                    //Compute rho for every theta and add diagonal in case its negative number
-                    for (int t = 0; t < thetaMax; t++) {
+        if (pool == null) {
+            vote(points, 0, thetaMax);
+        } else {
 
-                        //Conversion from cartesian to polar coordinates: rho = x*cos(theta) + y*sin(theta)
-                        //and add 'diagonal' to store negative values of rho
-                        int r = (int) (x * cosinuses[t] + y * sinuses[t]) + diagonal;
+            //Theta rows are split between threads, so no merge is needed
+            pool.execute(new VotingPool.Task() {
+                @Override
+                public void run(int slice, int slices) {
+                    vote(points, VotingPool.from(slice, slices, thetaMax), VotingPool.from(slice + 1, slices, thetaMax));
+                }
+            });
+        }
+    }
 
-                        //Increase vote by one
-                        houghSpace[t][r] = houghSpace[t][r] + 1;
+    /**
+     * Assigns rows of hough array to theta steps of the region. Theta steps outside of the region would have no votes, so they get
+     * no rows, only up to NEIGHBOURHOOD_SIZE empty rows stand for the gap between two intervals, and between the last and the first
+     * one around theta = 0. Rows closer than the neighbourhood then have the same distance as their theta steps, so peaks are the
+     * same as in the whole hough array.
+     *
+     * @return number of rows
+     */
+    private int prepareRows() {
+        rowOfTheta = new int[thetaMax];
+        int[] thetas = new int[thetaMax];
+        int rows = 0;
+        if (region == null) {
+            for (int t = 0; t < thetaMax; t++) {
+                rowOfTheta[t] = rows;
+                thetas[rows++] = t;
+            }
+        } else {
+            Arrays.fill(rowOfTheta, -1);
+            int first = -1, previousTo = 0;
+            for (int k = 0; k < region.getIntervals(); k++) {
+                int from = Math.max(0, region.getThetaFrom(k));
+                int to = Math.min(thetaMax, region.getThetaTo(k));
+                if (from >= to) {
+                    continue;
+                }
+                if (first < 0) {
+                    first = from;
+                } else {
+                    for (int gap = Math.min(from - previousTo, NEIGHBOURHOOD_SIZE); gap > 0; gap--) {
+                        thetas[rows++] = -1;
                     }
                 }
+                for (int t = from; t < to; t++) {
+                    rowOfTheta[t] = rows;
+                    thetas[rows++] = t;
+                }
+                previousTo = to;
+            }
+            for (int gap = (first < 0) ? 0 : Math.min(first + thetaMax - previousTo, NEIGHBOURHOOD_SIZE); gap > 0; gap--) {
+                thetas[rows++] = -1;
+            }
+        }
+        thetaOfRow = Arrays.copyOf(thetas, rows);
+        return rows;
+    }
+
+    /**
+     * Votes for every edge point into theta rows between fromTheta (inclusive) and toTheta (exclusive).
+     */
+    private void vote(EdgePointSet points, int fromTheta, int toTheta) {
+
+        //Cells voted for by one point, incremented together
+        int[] cells = new int[thetaMax];
+
+        //Loop through every edge point of the input image
+        for (int i = 0; i < points.size(); i++) {
+            int x = points.getX(i);
+            int y = points.getY(i);
+            int orientation = (gradientWindow > 0) ? points.getOrientation(i) : -1;
+
+            if (orientation < 0) {
+                vote(x, y, fromTheta, toTheta, cells);
+                continue;
+            }
+
+            //Vote only around gradient direction, the window can wrap around theta = 0
+            int low = orientation - gradientWindow;
+            int high = orientation + gradientWindow + 1;
+            if (low < 0) {
+                vote(x, y, Math.max(low + thetaMax, fromTheta), toTheta, cells);
+                low = 0;
+            }
+            if (high > thetaMax) {
+                vote(x, y, fromTheta, Math.min(high - thetaMax, toTheta), cells);
+                high = thetaMax;
+            }
+            vote(x, y, Math.max(low, fromTheta), Math.min(high, toTheta), cells);
+        }
+    }
+
+    /**
+     * Votes for a point into theta rows between fromTheta (inclusive) and toTheta (exclusive) which belong to the region.
+     */
+    private void vote(int x, int y, int fromTheta, int toTheta, int[] cells) {
+        if (region == null) {
+            voteKernel(x, y, fromTheta, toTheta, cells);
+            return;
+        }
+        for (int k = 0; k < region.getIntervals(); k++) {
+            int low = Math.max(fromTheta, region.getThetaFrom(k));
+            int high = Math.min(toTheta, region.getThetaTo(k));
+            if (low < high) {
+                voteKernel(x, y, low, high, cells);
             }
         }
     }
 
+    /**
+     * Votes for a point into theta rows with the selected kernel. Kernels only collect the cells, they are incremented by one call,
+     * so the loop over cells is in the class of the accumulator and is the same for every vote.
+     */
+    private void voteKernel(int x, int y, int fromTheta, int toTheta, int[] cells) {
+        int count = fixedPoint ? voteFixed(x, y, fromTheta, toTheta, cells) : voteDouble(x, y, fromTheta, toTheta, cells);
+        houghSpace.incrementAll(0, cells, 0, count);
+    }
+
+    /**
+     * Votes for a point with rho computed in double precision.
+     *
+     * @return number of cells voted for, stored in cells
+     */
+    private int voteDouble(int x, int y, int fromTheta, int toTheta, int[] cells) {
+        int count = 0;
+
+        //Compute rho for every theta and add diagonal in case its negative number
+        for (int t = fromTheta; t < toTheta; t++) {
+
+            //Conversion from cartesian to polar coordinates: rho = x*cos(theta) + y*sin(theta)
+            //and add 'diagonal' to store negative values of rho
+            int r = (int) (x * cosinuses[t] + y * sinuses[t]) + diagonal;
+
+            //Skip rho outside of the region
+            if (r < rhoFrom || r >= rhoTo) {
+                continue;
+            }
+
+            //Increase vote by one
+            cells[count++] = rowBase[t] + r;
+        }
+        return count;
+    }
+
+    /**
+     * Votes for a point with rho looked up in fixed point tables, so every vote is one addition and one increment.
+     *
+     * @return number of cells voted for, stored in cells
+     */
+    private int voteFixed(int x, int y, int fromTheta, int toTheta, int[] cells) {
+        int count = 0;
+        int[] xCos = fixedPointTables.xCos;
+        int[] ySin = fixedPointTables.ySin;
+        int xOffset = x * thetaMax;
+        int yOffset = y * thetaMax;
+
+        for (int t = fromTheta; t < toTheta; t++) {
+
+            //Diagonal is already included in the tables
+            int r = (xCos[xOffset + t] + ySin[yOffset + t]) >> FixedPointTables.SHIFT;
+            if (r >= rhoFrom && r < rhoTo) {
+                cells[count++] = rowBase[t] + r;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes fixed point tables unless the last ones were made for the same image size.
+     */
+    private void prepareFixedPointTables() {
+        FixedPointTables tables = sharedTables;
+        if (tables == null || !tables.matches(width, height, 0, 0, diagonal, thetaMax)) {
+            tables = new FixedPointTables(width, height, 0, 0, diagonal, sinuses, cosinuses);
+            sharedTables = tables;
+        }
+        fixedPointTables = tables;
+    }
+
+    /**
+     * @return votes of the cell of hough array for theta step and index of rho, 0 outside of the region
+     */
+    int getVotes(int t, int r) {
+        if (r < rhoFrom || r >= rhoTo || rowOfTheta[t] < 0) {
+            return 0;
+        }
+        return houghSpace.get(rowBase[t] + r);
+    }
+
+    /**
+     * @return number of indexes of rho in a theta row of the whole hough space
+     */
+    int getRhoSteps() {
+        return diagonal * 2;
+    }
+
     /**
      * Draws detected lines to the image.
      *
@@ -88,32 +338,30 @@ public class HoughLines {
      */
     public void drawLines(Mat image) {
 
-        //Loop through accumulator hough array
-        for (int t = 0; t < thetaMax; t++) {
-            for (int r = 0; r < diagonal * 2; r++) {
-
-                //If point has more votes than threshold, it strongly indicates line
-                if (houghSpace[t][r] > threshold) {
+        //Find local maxima of hough array with more votes than threshold, they strongly indicate lines
+        int peaks = peakFinder.find(houghSpace, threshold, NEIGHBOURHOOD_SIZE, NEIGHBOURHOOD_SIZE, true);
 
-                    //Compute real rho and starting and ending point of detected line
-                    double rho = r - diagonal;
-                    Point start, end;
+        for (int i = 0; i < peaks; i++) {
+            int t = thetaOfRow[peakFinder.getRow(i)];
+            int r = peakFinder.getColumn(i) + rhoFrom;
 
-                    //Vertical-ish lines conversion
-                    if (((t * thetaRad) < Math.PI / 4 || (t * thetaRad) > 3 * Math.PI / 4)) {
-                        start = new Point(rho / cosinuses[t], 0);
-                        end = new Point((rho - image.rows() * sinuses[t]) / cosinuses[t], image.rows());
-                    }
-                    //Horizontal-ish lines conversion
-                    else {
-                        start = new Point(0, rho / sinuses[t]);
-                        end = new Point(image.cols(), (rho - image.cols() * cosinuses[t]) / sinuses[t]);
-                    }
+            //Compute real rho and starting and ending point of detected line
+            double rho = r - diagonal;
+            Point start, end;
 
-                    //Draw the line in red color and thickness of 3px
-                    Core.line(image, start, end, new Scalar(255, 0, 0), 3);
-                }
+            //Vertical-ish lines conversion
+            if (((t * thetaRad) < Math.PI / 4 || (t * thetaRad) > 3 * Math.PI / 4)) {
+                start = new Point(rho / cosinuses[t], 0);
+                end = new Point((rho - image.rows() * sinuses[t]) / cosinuses[t], image.rows());
+            }
+            //Horizontal-ish lines conversion
+            else {
+                start = new Point(0, rho / sinuses[t]);
+                end = new Point(image.cols(), (rho - image.cols() * cosinuses[t]) / sinuses[t]);
             }
+
+            //Draw the line in red color and thickness of 3px
+            Core.line(image, start, end, new Scalar(255, 0, 0), 3);
         }
     }
 
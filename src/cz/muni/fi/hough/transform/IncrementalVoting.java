@@ -0,0 +1,166 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+
+/**
+ * Edge pixels of the previous frame for incremental voting of HoughLineTransform. Edge points of the next frame are compared
+ * with them and only the pixels whose votes change are listed, pixels which stopped being edges take their votes back and pixels
+ * which became edges vote.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+final class IncrementalVoting {
+
+    //Size of the image
+    private final int width, height;
+
+    //True while the hough array holds exactly the votes of the pixels in previousMask
+    private boolean valid;
+
+    //Edge pixels of the previous and the current frame, 0 for no edge, otherwise the orientation the pixel voted with increased by 2
+    private short[] previousMask, currentMask;
+
+    //Indexes of edge pixels of the previous frame in previousMask
+    private int[] previousPixels;
+    private int previousCount;
+
+    //Pixels whose votes change, with their orientation and delta
+    private int[] changedPixels;
+    private int[] changedOrientations;
+    private int[] changedDeltas;
+
+    IncrementalVoting(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return true if the hough array holds the votes of the previous frame, so the next one can be added incrementally
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Marks the votes of the previous frame as lost, the next frame has to be added in full.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Forgets the previous frame after the hough array was cleared, so every edge point of the next frame is listed as a change.
+     *
+     * @param size number of edge points of the next frame
+     */
+    void start(int size) {
+        if (previousMask == null) {
+            previousMask = new short[width * height];
+            currentMask = new short[width * height];
+            previousPixels = new int[Math.max(16, size)];
+            changedPixels = new int[Math.max(16, size)];
+            changedOrientations = new int[changedPixels.length];
+            changedDeltas = new int[changedPixels.length];
+        }
+        for (int k = 0; k < previousCount; k++) {
+            previousMask[previousPixels[k]] = 0;
+        }
+        previousCount = 0;
+        valid = true;
+    }
+
+    /**
+     * Lists the pixels whose votes change between the previous frame and the edge points, which become the previous frame.
+     *
+     * @param points edge points of the next frame
+     * @param inWindow true if points with known direction vote only within the gradient window, so their orientation is compared
+     * @return number of changed pixels
+     */
+    int update(EdgePointSet points, boolean inWindow) {
+        int size = points.size();
+
+        for (int i = 0; i < size; i++) {
+            int orientation = inWindow ? points.getOrientation(i) : -1;
+            currentMask[points.getY(i) * width + points.getX(i)] = (short) (orientation + 2);
+        }
+
+        //Pixels of the previous frame which are not edges any more, or which voted with another orientation
+        int changed = 0;
+        for (int k = 0; k < previousCount; k++) {
+            int pixel = previousPixels[k];
+            if (currentMask[pixel] != previousMask[pixel]) {
+                changed = addChange(changed, pixel, previousMask[pixel] - 2, -1);
+            }
+        }
+
+        //Pixels of the current frame which were not edges before, or which vote with another orientation
+        for (int i = 0; i < size; i++) {
+            int pixel = points.getY(i) * width + points.getX(i);
+            if (currentMask[pixel] != previousMask[pixel]) {
+                changed = addChange(changed, pixel, currentMask[pixel] - 2, 1);
+            }
+        }
+
+        //The current frame becomes the previous one
+        for (int k = 0; k < previousCount; k++) {
+            previousMask[previousPixels[k]] = 0;
+        }
+        if (previousPixels.length < size) {
+            previousPixels = new int[size];
+        }
+        for (int i = 0; i < size; i++) {
+            previousPixels[i] = points.getY(i) * width + points.getX(i);
+        }
+        previousCount = size;
+
+        short[] mask = previousMask;
+        previousMask = currentMask;
+        currentMask = mask;
+        return changed;
+    }
+
+    /**
+     * Appends a pixel to the list of changes.
+     *
+     * @return new number of changes
+     */
+    private int addChange(int changed, int pixel, int orientation, int delta) {
+        if (changed == changedPixels.length) {
+            changedPixels = Arrays.copyOf(changedPixels, 2 * changed);
+            changedOrientations = Arrays.copyOf(changedOrientations, 2 * changed);
+            changedDeltas = Arrays.copyOf(changedDeltas, 2 * changed);
+        }
+        changedPixels[changed] = pixel;
+        changedOrientations[changed] = orientation;
+        changedDeltas[changed] = delta;
+        return changed + 1;
+    }
+
+    /**
+     * @return x coordinate of changed pixel k
+     */
+    int getX(int k) {
+        return changedPixels[k] % width;
+    }
+
+    /**
+     * @return y coordinate of changed pixel k
+     */
+    int getY(int k) {
+        return changedPixels[k] / width;
+    }
+
+    /**
+     * @return theta step the changed pixel votes around, -1 if it votes for all thetas
+     */
+    int getOrientation(int k) {
+        return changedOrientations[k];
+    }
+
+    /**
+     * @return 1 if the changed pixel votes, -1 if it takes its votes back
+     */
+    int getDelta(int k) {
+        return changedDeltas[k];
+    }
+}
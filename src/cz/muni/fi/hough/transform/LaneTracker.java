@@ -0,0 +1,343 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+
+import cz.muni.fi.hough.line.Line;
+import cz.muni.fi.hough.line.LineSet;
+
+/**
+ * Tracks left and right road lane between frames. Theta and rho of every lane are estimated by Kalman filters with constant
+ * velocity. While a lane is tracked, only edge points in a band around its predicted position vote into a small hough array
+ * covering a narrow window of theta and rho around the prediction. When a lane is not found for several frames, the whole region
+ * of the hough line transform is searched again.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class LaneTracker {
+
+    //Lanes
+    public static final int LEFT = 0, RIGHT = 1;
+
+    //Frames without detection after which a lane is lost
+    private static final int MAX_MISSES = 5;
+
+    //Lines found by full search to choose lanes from
+    private static final int FULL_SEARCH_LINES = 10;
+
+    //Limits of half size of the search window in theta steps and in pixels of rho
+    private static final int MIN_THETA_WINDOW = 3, MAX_THETA_WINDOW = 10;
+    private static final int MIN_RHO_WINDOW = 10, MAX_RHO_WINDOW = 40;
+
+    //Noise of the lane movement and of the measurement, in theta steps and pixels squared
+    private static final double THETA_PROCESS_NOISE = 0.5, THETA_MEASUREMENT_NOISE = 1;
+    private static final double RHO_PROCESS_NOISE = 4, RHO_MEASUREMENT_NOISE = 4;
+
+    //Discrete values of theta in half a turn
+    private static final int MAX_THETA = 180;
+
+    /**
+     * Kalman filter of one coordinate with constant velocity.
+     */
+    private static class Estimate {
+
+        //Position, velocity and their covariance
+        double position, velocity;
+        double p00, p01, p10, p11;
+
+        void start(double position, double variance) {
+            this.position = position;
+            velocity = 0;
+            p00 = variance;
+            p11 = variance;
+            p01 = 0;
+            p10 = 0;
+        }
+
+        void predict(double processNoise) {
+            position += velocity;
+            p00 += p01 + p10 + p11 + processNoise;
+            p01 += p11;
+            p10 += p11;
+            p11 += processNoise;
+        }
+
+        void correct(double measurement, double measurementNoise) {
+            double s = p00 + measurementNoise;
+            double k0 = p00 / s;
+            double k1 = p10 / s;
+            double innovation = measurement - position;
+            position += k0 * innovation;
+            velocity += k1 * innovation;
+            double q00 = p00, q01 = p01;
+            p00 -= k0 * q00;
+            p01 -= k0 * q01;
+            p10 -= k1 * q00;
+            p11 -= k1 * q01;
+        }
+
+        /**
+         * @return half size of window covering three standard deviations, within limits
+         */
+        int window(int min, int max) {
+            return Math.max(min, Math.min(max, (int) Math.ceil(3 * Math.sqrt(p00))));
+        }
+    }
+
+    /**
+     * Track of one lane.
+     */
+    private static class Track {
+
+        //Theta in steps, can leave [0, MAX_THETA) as the lane turns, and rho relative to the centre of the image
+        final Estimate theta = new Estimate();
+        final Estimate rho = new Estimate();
+
+        boolean tracked;
+        int misses;
+
+        //Hough array [theta][rho] of the search window, sin and cos of its thetas
+        int[] votes = new int[0];
+        double[] sin = new double[2 * MAX_THETA_WINDOW + 1];
+        double[] cos = new double[2 * MAX_THETA_WINDOW + 1];
+    }
+
+    //Hough transform used for full search
+    private HoughLineTransform transform;
+
+    //Width of input image
+    private int width;
+
+    //Height of input image
+    private int height;
+
+    //Coordinates of the centre of the image
+    private float centerX, centerY;
+
+    //Offset of r of lines found by the transform
+    private int houghHeight;
+
+    private final Track[] tracks = new Track[]{new Track(), new Track()};
+
+    //Lines found by full search
+    private final LineSet lines = new LineSet(FULL_SEARCH_LINES);
+
+    //Number of full searches in the last frame, for logging
+    private int fullSearches;
+
+    /**
+     * @param transform Hough transform for the same image size used when a lane has to be searched for in the whole region
+     */
+    public LaneTracker(HoughLineTransform transform, int width, int height) {
+        this.transform = transform;
+        this.width = width;
+        this.height = height;
+        centerX = width / 2;
+        centerY = height / 2;
+        houghHeight = (int) (Math.sqrt(2) * Math.max(height, width)) / 2;
+    }
+
+    /**
+     * Forgets both lanes, so the next frame is searched fully.
+     */
+    public void reset() {
+        for (Track track : tracks) {
+            track.tracked = false;
+        }
+    }
+
+    /**
+     * Finds lanes in edge points of a new frame. If a lane is not tracked, edge points are added to the transform, which has to be
+     * reset and set up by the caller.
+     *
+     * @param points edge points of the frame
+     * @param threshold how many votes should indicate line
+     */
+    public void update(EdgePointSet points, int threshold) {
+        fullSearches = 0;
+
+        for (Track track : tracks) {
+            if (track.tracked) {
+                track.theta.predict(THETA_PROCESS_NOISE);
+                track.rho.predict(RHO_PROCESS_NOISE);
+                search(track, points, threshold);
+            }
+        }
+
+        if (!tracks[LEFT].tracked || !tracks[RIGHT].tracked) {
+            fullSearch(points, threshold);
+        }
+    }
+
+    /**
+     * Votes for edge points in a band around the predicted lane into its search window and corrects the estimate by the peak.
+     */
+    private void search(Track track, EdgePointSet points, int threshold) {
+        int thetaWindow = track.theta.window(MIN_THETA_WINDOW, MAX_THETA_WINDOW);
+        int rhoWindow = track.rho.window(MIN_RHO_WINDOW, MAX_RHO_WINDOW);
+        int thetas = 2 * thetaWindow + 1;
+        int rhos = 2 * rhoWindow + 1;
+        double predictedTheta = track.theta.position;
+        double predictedRho = track.rho.position;
+        int firstTheta = (int) Math.round(predictedTheta) - thetaWindow;
+
+        if (track.votes.length < thetas * rhos) {
+            track.votes = new int[thetas * rhos];
+        } else {
+            Arrays.fill(track.votes, 0, thetas * rhos, 0);
+        }
+        for (int k = 0; k < thetas; k++) {
+            double theta = (firstTheta + k) * Math.PI / MAX_THETA;
+            track.sin[k] = Math.sin(theta);
+            track.cos[k] = Math.cos(theta);
+        }
+
+        //Rho of a point changes by at most its distance from the centre times the angle between thetas
+        double predictedSin = Math.sin(predictedTheta * Math.PI / MAX_THETA);
+        double predictedCos = Math.cos(predictedTheta * Math.PI / MAX_THETA);
+        double band = rhoWindow + 1 + Math.sqrt(centerX * centerX + centerY * centerY) * Math.sin((thetaWindow + 1) * Math.PI / MAX_THETA);
+
+        int[] votes = track.votes;
+        int size = points.size();
+        int lastRow = (size == 0) ? -1 : points.getY(size - 1);
+        for (int row = (size == 0) ? 0 : points.getY(0); row <= lastRow; row++) {
+            float y = row - centerY;
+
+            //Columns of the row inside the band around the predicted lane, the whole row if the lane is almost horizontal
+            int fromX = 0;
+            int toX = width - 1;
+            if (Math.abs(predictedCos) > 1e-6) {
+                double x1 = (predictedRho - band - y * predictedSin) / predictedCos + centerX;
+                double x2 = (predictedRho + band - y * predictedSin) / predictedCos + centerX;
+                fromX = (int) Math.max(0, Math.floor(Math.min(x1, x2)));
+                toX = (int) Math.min(width - 1, Math.ceil(Math.max(x1, x2)));
+            } else if (Math.abs(y * predictedSin - predictedRho) > band) {
+                continue;
+            }
+            if (fromX > toX) {
+                continue;
+            }
+
+            //Only edge points of those columns are visited, found with the row index of the points
+            for (int i = points.firstAt(fromX, row); i < size && points.getY(i) == row && points.getX(i) <= toX; i++) {
+                float x = points.getX(i) - centerX;
+                if (Math.abs(x * predictedCos + y * predictedSin - predictedRho) > band) {
+                    continue;
+                }
+
+                for (int k = 0; k < thetas; k++) {
+                    int r = (int) Math.floor(x * track.cos[k] + y * track.sin[k] - predictedRho + 0.5) + rhoWindow;
+                    if (r >= 0 && r < rhos) {
+                        votes[k * rhos + r]++;
+                    }
+                }
+            }
+        }
+
+        int best = 0;
+        for (int j = 1; j < thetas * rhos; j++) {
+            if (votes[j] > votes[best]) {
+                best = j;
+            }
+        }
+
+        if (votes[best] > threshold) {
+            track.theta.correct(firstTheta + best / rhos, THETA_MEASUREMENT_NOISE);
+            track.rho.correct(predictedRho + best % rhos - rhoWindow, RHO_MEASUREMENT_NOISE);
+            track.misses = 0;
+        } else if (++track.misses > MAX_MISSES) {
+            track.tracked = false;
+        }
+    }
+
+    /**
+     * Searches the whole region of the transform and starts tracks of lanes which are not tracked. Like the horizon mode, the lane
+     * of every side is the line crossing the bottom of the image closest to its middle.
+     */
+    private void fullSearch(EdgePointSet points, int threshold) {
+        transform.addPoints(points);
+        transform.getLines(threshold, lines);
+        fullSearches++;
+
+        double bestLeft = -Double.MAX_VALUE, bestRight = Double.MAX_VALUE;
+        int left = -1, right = -1;
+        for (int i = 0; i < lines.size(); i++) {
+            double bottomX = bottomX(lines.getTheta(i), lines.getRho(i) - houghHeight);
+            if (Double.isNaN(bottomX) || bottomX < 0 || bottomX > width) {
+                continue;
+            }
+            if (bottomX <= centerX && bottomX > bestLeft) {
+                bestLeft = bottomX;
+                left = i;
+            }
+            if (bottomX > centerX && bottomX < bestRight) {
+                bestRight = bottomX;
+                right = i;
+            }
+        }
+
+        start(tracks[LEFT], left);
+        start(tracks[RIGHT], right);
+    }
+
+    /**
+     * Starts track of a lane from a line found by full search, unless the lane is already tracked.
+     */
+    private void start(Track track, int line) {
+        if (track.tracked || line < 0) {
+            return;
+        }
+        double theta = lines.getTheta(line) * MAX_THETA / Math.PI;
+        track.theta.start(theta, MAX_THETA_WINDOW * MAX_THETA_WINDOW / 9.0);
+        track.rho.start(lines.getRho(line) - houghHeight, MAX_RHO_WINDOW * MAX_RHO_WINDOW / 9.0);
+        track.tracked = true;
+        track.misses = 0;
+    }
+
+    /**
+     * @return x coordinate where the line crosses the bottom of the image, NaN for horizontal lines
+     */
+    private double bottomX(double theta, double rho) {
+        double cos = Math.cos(theta);
+        if (Math.abs(cos) < 1e-6) {
+            return Double.NaN;
+        }
+        return (rho - (height - centerY) * Math.sin(theta)) / cos + centerX;
+    }
+
+    /**
+     * @return true if the lane is tracked
+     */
+    public boolean isTracked(int lane) {
+        return tracks[lane].tracked;
+    }
+
+    /**
+     * @return number of full searches in the last update, 0 or 1
+     */
+    public int getFullSearches() {
+        return fullSearches;
+    }
+
+    /**
+     * Sets the line to the estimate of the lane from the bottom to the top of the image.
+     *
+     * @return false if the lane is not tracked or it is horizontal, the line is not changed then
+     */
+    public boolean getLane(int lane, Line line) {
+        Track track = tracks[lane];
+        if (!track.tracked) {
+            return false;
+        }
+        double theta = track.theta.position * Math.PI / MAX_THETA;
+        double rho = track.rho.position;
+        double cos = Math.cos(theta);
+        if (Math.abs(cos) < 1e-6) {
+            return false;
+        }
+        double sin = Math.sin(theta);
+        double bottomX = (rho - (height - centerY) * sin) / cos + centerX;
+        double topX = (rho + centerY * sin) / cos + centerX;
+        line.setLine(bottomX, topX, height, 0);
+        return true;
+    }
+}
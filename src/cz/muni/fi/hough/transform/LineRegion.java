@@ -0,0 +1,116 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+
+/**
+ * Part of the line hough space a transform votes into: one or more intervals of theta steps and an interval of rho. Hough arrays
+ * are allocated and filled only for this part, so lines outside of it are never voted for instead of being thrown away after
+ * detection. Rho is in pixels relative to the origin of the coordinates used by the transform.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class LineRegion {
+
+    //Pairs of theta steps [from, to), ordered and not overlapping
+    private final int[] thetaIntervals;
+
+    //Interval of rho [rhoMin, rhoMax)
+    private final int rhoMin, rhoMax;
+
+    /**
+     * @param thetaIntervals pairs of theta steps, every pair [from, to), ordered and not overlapping
+     * @param rhoMin lowest rho, inclusive
+     * @param rhoMax highest rho, exclusive
+     */
+    public LineRegion(int[] thetaIntervals, int rhoMin, int rhoMax) {
+        if (thetaIntervals.length % 2 != 0) {
+            throw new IllegalArgumentException("Theta intervals have to be given as pairs");
+        }
+        this.thetaIntervals = thetaIntervals.clone();
+        this.rhoMin = rhoMin;
+        this.rhoMax = rhoMax;
+    }
+
+    /**
+     * Creates region of lines with given thetas which can pass through a rectangle of the image. Rho interval is the range of
+     * rho over the corners of the rectangle for all the thetas.
+     *
+     * @param thetaIntervals pairs of theta steps, every pair [from, to), ordered and not overlapping
+     * @param thetas number of theta steps in half a turn
+     * @param originX x coordinate of the origin used by the transform
+     * @param originY y coordinate of the origin used by the transform
+     * @param left
+     * @param top
+     * @param right
+     * @param bottom
+     */
+    public static LineRegion around(int[] thetaIntervals, int thetas, double originX, double originY, int left, int top, int right, int bottom) {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+
+        for (int k = 0; k < thetaIntervals.length; k += 2) {
+            for (int t = thetaIntervals[k]; t < thetaIntervals[k + 1]; t++) {
+                double cos = Math.cos(t * Math.PI / thetas);
+                double sin = Math.sin(t * Math.PI / thetas);
+
+                //Rho is linear in x and y, so its extremes over the rectangle are in the corners
+                double x1 = (left - originX) * cos, x2 = (right - originX) * cos;
+                double y1 = (top - originY) * sin, y2 = (bottom - originY) * sin;
+                min = Math.min(min, Math.min(x1, x2) + Math.min(y1, y2));
+                max = Math.max(max, Math.max(x1, x2) + Math.max(y1, y2));
+            }
+        }
+
+        //One more step on both sides for rounding of the voting kernels
+        return new LineRegion(thetaIntervals, (int) Math.floor(min) - 1, (int) Math.ceil(max) + 2);
+    }
+
+    /**
+     * @return number of theta intervals
+     */
+    public int getIntervals() {
+        return thetaIntervals.length / 2;
+    }
+
+    /**
+     * @return first theta step of interval, inclusive
+     */
+    public int getThetaFrom(int interval) {
+        return thetaIntervals[2 * interval];
+    }
+
+    /**
+     * @return last theta step of interval, exclusive
+     */
+    public int getThetaTo(int interval) {
+        return thetaIntervals[2 * interval + 1];
+    }
+
+    /**
+     * @return true if theta step lies in one of the intervals
+     */
+    public boolean containsTheta(int t) {
+        for (int k = 0; k < thetaIntervals.length; k += 2) {
+            if (t >= thetaIntervals[k] && t < thetaIntervals[k + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getRhoMin() {
+        return rhoMin;
+    }
+
+    public int getRhoMax() {
+        return rhoMax;
+    }
+
+    /**
+     * @return true if the other region covers the same part of hough space
+     */
+    public boolean sameAs(LineRegion other) {
+        return other != null && rhoMin == other.rhoMin && rhoMax == other.rhoMax
+                && Arrays.equals(thetaIntervals, other.thetaIntervals);
+    }
+}
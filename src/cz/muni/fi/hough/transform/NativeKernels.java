@@ -0,0 +1,115 @@
+package cz.muni.fi.hough.transform;
+
+/**
+ * Voting and peak kernels of the Java transforms implemented in C++ in the native library mixed_sample (see jni/). Every call
+ * processes all given edge points or a whole hough array, so Java and native code cross once per kernel and never per pixel.
+ * Arrays are passed as they are, rows of line hough arrays are pinned one at a time. Kernels compute exactly the same votes as the
+ * Java ones.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public final class NativeKernels {
+
+    //Version of native API, the library has to return the same one
+    private static final int VERSION = 3;
+
+    //True if the library is loaded and has the kernels of this version, read by voting threads
+    private static volatile boolean available;
+
+    private NativeKernels() {
+    }
+
+    /**
+     * Loads the native library. On Android it has to be called after OpenCV is loaded, as the library is linked against it.
+     *
+     * @return true if native kernels can be used
+     */
+    public static synchronized boolean load() {
+        if (!available) {
+            try {
+                System.loadLibrary("mixed_sample");
+                available = version() == VERSION;
+            } catch (UnsatisfiedLinkError e) {
+
+                //Library is missing or it was built without the kernels
+                available = false;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * @return true if native kernels were loaded
+     */
+    public static boolean isAvailable() {
+        return available;
+    }
+
+    private static native int version();
+
+    /**
+     * Votes for edge points into theta rows of line hough array with r computed in double precision, as HoughLineTransform does.
+     *
+     * @param points packed coordinates (y << 16) | x
+     * @param from first point, inclusive
+     * @param to last point, exclusive
+     * @param array hough array [theta][r - rhoFrom], rows which are null are skipped
+     * @param fromTheta first theta row, inclusive
+     * @param toTheta last theta row, exclusive
+     * @param sinCache sin of every theta step
+     * @param cosCache cos of every theta step
+     * @param centerX origin of the coordinates
+     * @param centerY origin of the coordinates
+     * @param houghHeight offset added to r to store negative values
+     * @param rhoFrom index of r stored in the first column
+     * @param rhoTo index of r after the last column
+     * @param delta added to every voted cell
+     */
+    static native void voteLines(int[] points, int from, int to, int[][] array, int fromTheta, int toTheta, double[] sinCache,
+            double[] cosCache, float centerX, float centerY, int houghHeight, int rhoFrom, int rhoTo, int delta);
+
+    /**
+     * Votes for edge points into theta rows of line hough array with r looked up in fixed point tables.
+     *
+     * @param xCos table [x * thetas + t] of FixedPointTables
+     * @param ySin table [y * thetas + t] of FixedPointTables
+     * @param thetas number of theta steps of the tables
+     * @param shift number of fractional bits of the tables
+     * @see #voteLines
+     */
+    static native void voteLinesFixed(int[] points, int from, int to, int[][] array, int fromTheta, int toTheta, int[] xCos,
+            int[] ySin, int thetas, int shift, int rhoFrom, int rhoTo, int delta);
+
+    /**
+     * Votes for edge points into circle hough array with known radius, as HoughCircles2D does. Cells of rows fromB to toB are
+     * overwritten with the votes and no other cells are touched, so threads can vote into their own rows of the same array.
+     *
+     * @param points packed coordinates (y << 16) | x
+     * @param from first point, inclusive
+     * @param to last point, exclusive
+     * @param array hough array [a * height + b]
+     * @param width number of values of a
+     * @param height number of values of b
+     * @param dx x offsets of pixels of the circle (see CircleStencil)
+     * @param dy y offsets of pixels of the circle
+     * @param maxX points with x from this one are skipped
+     * @param maxY points with y from this one are skipped
+     * @param fromB first voted b, inclusive
+     * @param toB last voted b, exclusive
+     */
+    static native void voteCircles(int[] points, int from, int to, int[] array, int width, int height, int[] dx, int[] dy,
+            int maxX, int maxY, int fromB, int toB);
+
+    /**
+     * Finds peaks of 2D hough array in the same way as PeakFinder.
+     *
+     * @param array hough array [row][column], rows which are null have no votes
+     * @param threshold peaks need more votes than this
+     * @param rowSize number of rows to both sides in the neighbourhood
+     * @param columnSize number of columns to both sides in the neighbourhood
+     * @param wrapRows if true, first and last row are neighbours
+     * @param peaks filled with row, column pairs of peaks in the order of rows
+     * @return number of peaks, if it is more than peaks.length / 2 only that many are stored
+     */
+    static native int findPeaks(int[][] array, int threshold, int rowSize, int columnSize, boolean wrapRows, int[] peaks);
+}
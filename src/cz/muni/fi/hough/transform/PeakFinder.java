@@ -0,0 +1,533 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+
+/**
+ * Finds local maxima above threshold in 2D and 3D hough arrays. A cell is a peak if no cell in its neighbourhood has more votes.
+ * Maximum of the neighbourhood is computed by a separable max filter, one dimension after another, so every cell costs the same
+ * number of comparisons no matter how many cells are above threshold. Rows of the array, or rows or layers of a 3D array
+ * stored as accumulators, can be split between threads of a pool.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class PeakFinder {
+
+    //Threads to search with, null to search on the calling thread
+    private VotingPool pool;
+
+    //Search 2D arrays with the native kernel
+    private boolean nativeKernel;
+
+    //Row, column pairs of peaks found by the native kernel
+    private int[] nativePeaks = new int[64];
+
+    //Maximum of every row over the column neighbourhood, reused for 2D arrays of the same size
+    private int[][] rowMaxima;
+
+    //Buffers of every slice, reused for arrays of the same size
+    private Workspace[] workspaces = new Workspace[1];
+
+    //Peaks found by every slice as row, column, layer, value quadruples
+    private int[][] slicePeaks = new int[1][];
+    private int[] sliceSizes = new int[1];
+    private int slices;
+
+    //Found peaks
+    private int[] rows = new int[16];
+    private int[] columns = new int[16];
+    private int[] layers = new int[16];
+    private int[] values = new int[16];
+    private int size;
+
+    /**
+     * @param pool threads to search with, every thread searches its own rows, null to search on the calling thread
+     */
+    public void setPool(VotingPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param useNative true to search 2D arrays with the native kernel (see NativeKernels) on the calling thread, if it was loaded
+     */
+    public void setNative(boolean useNative) {
+        this.nativeKernel = useNative && NativeKernels.isAvailable();
+    }
+
+    /**
+     * Finds peaks of 2D hough array.
+     *
+     * @param array hough array [row][column], all rows of the same length, rows which are null are not searched and have no votes
+     * @param threshold peaks need more votes than this
+     * @param rowSize number of rows to both sides in the neighbourhood
+     * @param columnSize number of columns to both sides in the neighbourhood
+     * @param wrapRows if true, first and last row are neighbours, as theta rows of line hough arrays are
+     * @return number of found peaks
+     */
+    public int find(final int[][] array, final int threshold, final int rowSize, final int columnSize, final boolean wrapRows) {
+        if (nativeKernel) {
+            return findNative(array, threshold, rowSize, columnSize, wrapRows);
+        }
+
+        final int rowCount = array.length;
+        int length = 0;
+        for (int t = 0; t < rowCount; t++) {
+            if (array[t] != null) {
+                length = array[t].length;
+                break;
+            }
+        }
+        final int columnCount = length;
+
+        if (rowMaxima == null || rowMaxima.length != rowCount || (rowCount > 0 && rowMaxima[0].length != columnCount)) {
+            rowMaxima = new int[rowCount][columnCount];
+        }
+
+        //Maximum over columns of every row
+        execute(rowCount, new VotingPool.Task() {
+            @Override
+            public void run(int slice, int slices) {
+                int to = VotingPool.from(slice + 1, slices, rowCount);
+                for (int t = VotingPool.from(slice, slices, rowCount); t < to; t++) {
+                    if (array[t] != null) {
+                        maxFilter(array[t], 0, 1, rowMaxima[t], 0, 1, columnCount, columnSize);
+                    }
+                }
+            }
+        });
+
+        //Maximum over rows, row by row, and comparison with the array
+        execute(rowCount, new VotingPool.Task() {
+            @Override
+            public void run(int slice, int slices) {
+                int[] maxima = workspace(slice, 0, columnCount).maxima;
+                int to = VotingPool.from(slice + 1, slices, rowCount);
+                sliceSizes[slice] = 0;
+
+                for (int t = VotingPool.from(slice, slices, rowCount); t < to; t++) {
+                    if (array[t] == null) {
+                        continue;
+                    }
+                    System.arraycopy(rowMaxima[t], 0, maxima, 0, columnCount);
+                    for (int dt = -rowSize; dt <= rowSize; dt++) {
+                        int neighbour = t + dt;
+                        if (wrapRows) {
+                            neighbour = (neighbour % rowCount + rowCount) % rowCount;
+                        } else if (neighbour < 0 || neighbour >= rowCount) {
+                            continue;
+                        }
+                        if (array[neighbour] == null) {
+                            continue;
+                        }
+                        int[] other = rowMaxima[neighbour];
+                        for (int c = 0; c < columnCount; c++) {
+                            if (other[c] > maxima[c]) {
+                                maxima[c] = other[c];
+                            }
+                        }
+                    }
+
+                    int[] row = array[t];
+                    for (int c = 0; c < columnCount; c++) {
+                        if (row[c] > threshold && row[c] == maxima[c]) {
+                            addSlicePeak(slice, t, c, 0, row[c]);
+                        }
+                    }
+                }
+            }
+        });
+
+        collect();
+        return size;
+    }
+
+    /**
+     * Finds peaks of 2D hough array with the native kernel, the search is repeated with more space if there are more peaks than fit.
+     */
+    private int findNative(int[][] array, int threshold, int rowSize, int columnSize, boolean wrapRows) {
+        int count = NativeKernels.findPeaks(array, threshold, rowSize, columnSize, wrapRows, nativePeaks);
+        if (2 * count > nativePeaks.length) {
+            nativePeaks = new int[4 * count];
+            count = NativeKernels.findPeaks(array, threshold, rowSize, columnSize, wrapRows, nativePeaks);
+        }
+        if (rows.length < count) {
+            rows = new int[count];
+            columns = new int[count];
+            layers = new int[count];
+            values = new int[count];
+        }
+
+        for (int i = 0; i < count; i++) {
+            rows[i] = nativePeaks[2 * i];
+            columns[i] = nativePeaks[2 * i + 1];
+            layers[i] = 0;
+            values[i] = array[rows[i]][columns[i]];
+        }
+        size = count;
+        return size;
+    }
+
+    /**
+     * Finds peaks of 2D hough array stored in an accumulator.
+     *
+     * @param array hough array
+     * @param threshold peaks need more votes than this
+     * @param rowSize number of rows to both sides in the neighbourhood
+     * @param columnSize number of columns to both sides in the neighbourhood
+     * @param wrapRows if true, first and last row are neighbours, as theta rows of line hough arrays are
+     * @return number of found peaks
+     */
+    public int find(Accumulator array, int threshold, int rowSize, int columnSize, boolean wrapRows) {
+        return find(new Accumulator[]{array}, threshold, rowSize, columnSize, 0, wrapRows);
+    }
+
+    /**
+     * Finds peaks of 3D hough array stored as one accumulator per layer, all of the same size. Every thread keeps the column maxima
+     * of the rows in the neighbourhood of the current row. If the neighbourhood covers other layers, layers are split between
+     * threads and every thread keeps the row and column maxima of the layers in the neighbourhood of the current layer only, so
+     * the search needs memory of 2 * layerSize + 1 layers per thread instead of the whole array. Otherwise rows of all layers are
+     * split between threads.
+     *
+     * @param array hough array [layer], accumulators which are null have no votes
+     * @param threshold peaks need more votes than this
+     * @param rowSize number of rows to both sides in the neighbourhood
+     * @param columnSize number of columns to both sides in the neighbourhood
+     * @param layerSize number of layers to both sides in the neighbourhood
+     * @param wrapRows if true, first and last row are neighbours
+     * @return number of found peaks, getLayer returns index of the layer in the array
+     */
+    public int find(final Accumulator[] array, final int threshold, final int rowSize, final int columnSize, final int layerSize,
+            final boolean wrapRows) {
+        final int layerCount = array.length;
+        Accumulator any = null;
+        for (int k = 0; k < layerCount && any == null; k++) {
+            any = array[k];
+        }
+        if (any == null) {
+            size = 0;
+            return size;
+        }
+        final int rowCount = any.getRows();
+        final int columnCount = any.getColumns();
+
+        if (layerSize > 0) {
+            findInLayerWindows(array, threshold, rowSize, columnSize, layerSize, wrapRows, rowCount, columnCount);
+            return size;
+        }
+
+        //Maximum over the row and column neighbourhood of every row, compared with the row right away
+        final int units = layerCount * rowCount;
+        execute(units, new VotingPool.Task() {
+            @Override
+            public void run(int slice, int slices) {
+                Workspace workspace = workspace(slice, 2 * rowSize + 1, columnCount);
+                int[][] ring = workspace.ring;
+                int[] ringKeys = workspace.ringKeys;
+                int[] values = workspace.values;
+                int[] maxima = workspace.maxima;
+                int to = VotingPool.from(slice + 1, slices, units);
+                sliceSizes[slice] = 0;
+                int layer = -1;
+
+                for (int unit = VotingPool.from(slice, slices, units); unit < to; unit++) {
+                    int k = unit / rowCount;
+                    int r = unit % rowCount;
+                    Accumulator accumulator = array[k];
+                    if (accumulator == null) {
+                        continue;
+                    }
+
+                    //Column maxima of the rows of the previous layer are not valid
+                    if (k != layer) {
+                        Arrays.fill(ringKeys, Integer.MIN_VALUE);
+                        layer = k;
+                    }
+                    rowMaxima(accumulator, r, rowSize, columnSize, wrapRows, ring, ringKeys, values, maxima, 0);
+
+                    accumulator.getRow(r, values);
+                    for (int c = 0; c < columnCount; c++) {
+                        if (values[c] > threshold && values[c] == maxima[c]) {
+                            addSlicePeak(slice, r, c, k, values[c]);
+                        }
+                    }
+                }
+            }
+        });
+
+        collect();
+        return size;
+    }
+
+    /**
+     * Finds peaks of 3D hough array with layers split between threads. Every thread slides a window of the row and column maxima
+     * of 2 * layerSize + 1 layers over its layers, the layers at the ends of its slice are computed by the neighbouring threads
+     * too.
+     */
+    private void findInLayerWindows(final Accumulator[] array, final int threshold, final int rowSize, final int columnSize,
+            final int layerSize, final boolean wrapRows, final int rowCount, final int columnCount) {
+        final int layerCount = array.length;
+        final int windowSize = 2 * layerSize + 1;
+
+        execute(layerCount, new VotingPool.Task() {
+            @Override
+            public void run(int slice, int slices) {
+                Workspace workspace = workspace(slice, 2 * rowSize + 1, columnCount);
+                workspace.prepareWindow(windowSize, rowCount * columnCount);
+                int[][] window = workspace.window;
+                int[] keys = workspace.windowKeys;
+                Arrays.fill(keys, Integer.MIN_VALUE);
+
+                int[][] ring = workspace.ring;
+                int[] ringKeys = workspace.ringKeys;
+                int[] values = workspace.values;
+                int[] maxima = workspace.maxima;
+                int to = VotingPool.from(slice + 1, slices, layerCount);
+                sliceSizes[slice] = 0;
+
+                for (int k = VotingPool.from(slice, slices, layerCount); k < to; k++) {
+                    if (array[k] == null) {
+                        continue;
+                    }
+                    int from = Math.max(0, k - layerSize);
+                    int last = Math.min(layerCount - 1, k + layerSize);
+
+                    //Layers entering the window replace the ones which left it
+                    for (int n = from; n <= last; n++) {
+                        if (array[n] != null && keys[n % windowSize] != n) {
+                            Arrays.fill(ringKeys, Integer.MIN_VALUE);
+                            for (int r = 0; r < rowCount; r++) {
+                                rowMaxima(array[n], r, rowSize, columnSize, wrapRows, ring, ringKeys, values, window[n % windowSize],
+                                        r * columnCount);
+                            }
+                            keys[n % windowSize] = n;
+                        }
+                    }
+
+                    //Maximum over layers and comparison with the array
+                    for (int r = 0; r < rowCount; r++) {
+                        int offset = r * columnCount;
+                        System.arraycopy(window[k % windowSize], offset, maxima, 0, columnCount);
+                        for (int n = from; n <= last; n++) {
+                            if (n == k || array[n] == null) {
+                                continue;
+                            }
+                            int[] other = window[n % windowSize];
+                            for (int c = 0; c < columnCount; c++) {
+                                if (other[offset + c] > maxima[c]) {
+                                    maxima[c] = other[offset + c];
+                                }
+                            }
+                        }
+
+                        array[k].getRow(r, values);
+                        for (int c = 0; c < columnCount; c++) {
+                            if (values[c] > threshold && values[c] == maxima[c]) {
+                                addSlicePeak(slice, r, c, k, values[c]);
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        collect();
+    }
+
+    /**
+     * Computes maximum over the row and column neighbourhood of every cell of row r of the accumulator into dst from offset. Column
+     * maxima of the neighbouring rows are kept in the ring, under the index of the row before wrapping, so consecutive rows of the
+     * same accumulator filter every row once, ringKeys have to be reset for another accumulator. Values is a buffer of a row.
+     */
+    private static void rowMaxima(Accumulator accumulator, int r, int rowSize, int columnSize, boolean wrapRows, int[][] ring,
+            int[] ringKeys, int[] values, int[] dst, int offset) {
+        int rowCount = accumulator.getRows();
+        int columnCount = accumulator.getColumns();
+        int span = ring.length;
+        boolean first = true;
+        for (int n = r - rowSize; n <= r + rowSize; n++) {
+            int neighbour = n;
+            if (wrapRows) {
+                neighbour = (n % rowCount + rowCount) % rowCount;
+            } else if (n < 0 || n >= rowCount) {
+                continue;
+            }
+            int slot = (n % span + span) % span;
+            if (ringKeys[slot] != n) {
+                accumulator.getRow(neighbour, values);
+                maxFilter(values, 0, 1, ring[slot], 0, 1, columnCount, columnSize);
+                ringKeys[slot] = n;
+            }
+            int[] filtered = ring[slot];
+            if (first) {
+                System.arraycopy(filtered, 0, dst, offset, columnCount);
+                first = false;
+            } else {
+                for (int c = 0; c < columnCount; c++) {
+                    if (filtered[c] > dst[offset + c]) {
+                        dst[offset + c] = filtered[c];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes maximum of a window of size values to both sides for every one of count values read from src and written to dst.
+     * Values are read and written with given offsets and strides.
+     */
+    private static void maxFilter(int[] src, int srcOffset, int srcStride, int[] dst, int dstOffset, int dstStride, int count, int size) {
+        for (int i = 0; i < count; i++) {
+            int from = Math.max(0, i - size);
+            int to = Math.min(count - 1, i + size);
+            int max = src[srcOffset + from * srcStride];
+            for (int j = from + 1; j <= to; j++) {
+                int value = src[srcOffset + j * srcStride];
+                if (value > max) {
+                    max = value;
+                }
+            }
+            dst[dstOffset + i * dstStride] = max;
+        }
+    }
+
+    /**
+     * Runs task split into slices of rows or layers, one slice per thread of the pool.
+     */
+    private void execute(int rowCount, VotingPool.Task task) {
+        slices = (pool == null) ? 1 : Math.max(1, Math.min(pool.getThreads(), rowCount));
+        if (slicePeaks.length < slices) {
+            slicePeaks = new int[slices][];
+            sliceSizes = new int[slices];
+            workspaces = Arrays.copyOf(workspaces, slices);
+        }
+        if (pool == null) {
+            task.run(0, 1);
+        } else {
+            pool.execute(slices, task);
+        }
+    }
+
+    /**
+     * @return buffers of the slice for rings of span rows of columnCount columns
+     */
+    private Workspace workspace(int slice, int span, int columnCount) {
+        Workspace workspace = workspaces[slice];
+        if (workspace == null) {
+            workspace = new Workspace();
+            workspaces[slice] = workspace;
+        }
+        workspace.prepare(span, columnCount);
+        return workspace;
+    }
+
+    private void addSlicePeak(int slice, int row, int column, int layer, int value) {
+        int[] peaks = slicePeaks[slice];
+        int n = sliceSizes[slice];
+        if (peaks == null || n + 4 > peaks.length) {
+            int[] grown = new int[(peaks == null) ? 64 : 2 * peaks.length];
+            if (peaks != null) {
+                System.arraycopy(peaks, 0, grown, 0, n);
+            }
+            peaks = grown;
+            slicePeaks[slice] = peaks;
+        }
+        peaks[n] = row;
+        peaks[n + 1] = column;
+        peaks[n + 2] = layer;
+        peaks[n + 3] = value;
+        sliceSizes[slice] = n + 4;
+    }
+
+    /**
+     * Joins peaks of all slices in the order of slices.
+     */
+    private void collect() {
+        int total = 0;
+        for (int s = 0; s < slices; s++) {
+            total += sliceSizes[s] / 4;
+        }
+        if (rows.length < total) {
+            rows = new int[total];
+            columns = new int[total];
+            layers = new int[total];
+            values = new int[total];
+        }
+
+        size = 0;
+        for (int s = 0; s < slices; s++) {
+            int[] peaks = slicePeaks[s];
+            for (int j = 0; j < sliceSizes[s]; j += 4) {
+                rows[size] = peaks[j];
+                columns[size] = peaks[j + 1];
+                layers[size] = peaks[j + 2];
+                values[size] = peaks[j + 3];
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Buffers one slice searches with.
+     */
+    private static final class Workspace {
+
+        //Column maxima of the rows around the current one and indexes of the rows before wrapping
+        int[][] ring = new int[0][];
+        int[] ringKeys = new int[0];
+
+        //Values of a row and maxima of their neighbourhood
+        int[] values = new int[0];
+        int[] maxima = new int[0];
+
+        //Row and column maxima of the layers around the current one and indexes of the layers
+        int[][] window = new int[0][];
+        int[] windowKeys = new int[0];
+
+        void prepare(int span, int columnCount) {
+            boolean resized = values.length != columnCount;
+            if (resized) {
+                values = new int[columnCount];
+                maxima = new int[columnCount];
+            }
+            if (resized || ring.length != span) {
+                ring = new int[span][columnCount];
+                ringKeys = new int[span];
+            }
+        }
+
+        void prepareWindow(int windowSize, int layerCells) {
+            if (window.length != windowSize || window[0].length != layerCells) {
+                window = new int[windowSize][layerCells];
+                windowKeys = new int[windowSize];
+            }
+        }
+    }
+
+    /**
+     * @return number of peaks found by the last search
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getRow(int i) {
+        return rows[i];
+    }
+
+    public int getColumn(int i) {
+        return columns[i];
+    }
+
+    /**
+     * @return layer of peak in 3D array, 0 for 2D arrays
+     */
+    public int getLayer(int i) {
+        return layers[i];
+    }
+
+    /**
+     * @return votes of peak
+     */
+    public int getValue(int i) {
+        return values[i];
+    }
+}
@@ -0,0 +1,114 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+import java.util.Vector;
+
+import cz.muni.fi.hough.line.HoughLine;
+
+/**
+ * Probabilistic voting of HoughLineTransform. Edge points vote in random order and as soon as a point pushes a cell of the hough
+ * array above the threshold, the line is taken and all points lying on it take their votes back and are not processed any more.
+ * Keeps the order and the states of the points between frames.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+final class ProbabilisticVoting {
+
+    //States of edge points
+    private static final byte POINT_WAITING = 0, POINT_VOTED = 1, POINT_REMOVED = 2;
+
+    //Hough transform used for voting
+    private final HoughLineTransform transform;
+
+    //Random order of edge points and their states, reused between frames
+    private final Random random = new Random();
+    private int[] order;
+    private byte[] pointStates;
+
+    ProbabilisticVoting(HoughLineTransform transform) {
+        this.transform = transform;
+    }
+
+    /**
+     * Adds edge points in random order until maxLines lines are found or maxFraction of the points is processed.
+     *
+     * @return detected lines
+     */
+    Vector<HoughLine> addPoints(EdgePointSet points, int threshold, int maxLines, float maxFraction) {
+        Vector<HoughLine> lines = new Vector<HoughLine>(20);
+        int size = points.size();
+
+        if (order == null || order.length < size) {
+            order = new int[points.getPoints().length];
+            pointStates = new byte[order.length];
+        }
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            pointStates[i] = POINT_WAITING;
+        }
+
+        int limit = (int) Math.min(size, Math.ceil(size * (double) maxFraction));
+
+        for (int k = 0; k < limit && lines.size() < maxLines; k++) {
+
+            //Pick a random point from the ones not processed yet
+            int j = k + random.nextInt(size - k);
+            int i = order[j];
+            order[j] = order[k];
+            order[k] = i;
+
+            if (pointStates[i] == POINT_REMOVED) {
+                continue;
+            }
+
+            transform.votePoint(points, i, 1);
+            pointStates[i] = POINT_VOTED;
+
+            int cell = transform.findPeak(points, i, threshold);
+            if (cell < 0) {
+                continue;
+            }
+            int peakTheta = cell >>> 16;
+            int peakR = cell & 0xffff;
+
+            lines.add(new HoughLine(transform.getTheta(peakTheta), peakR));
+
+            //Points on the line take their votes back and will not vote any more
+            removeLine(points, peakTheta, peakR);
+        }
+
+        return lines;
+    }
+
+    /**
+     * Marks edge points with r at most one step from the line as removed and takes their votes back. Only the part of every row
+     * the line can cross is searched, found with the row index of the points.
+     */
+    private void removeLine(EdgePointSet points, int t, int peakR) {
+        int size = points.size();
+        if (size == 0) {
+            return;
+        }
+
+        for (int y = points.getY(0); y <= points.getY(size - 1); y++) {
+            int columns = transform.lineColumns(t, peakR, y);
+            if (columns < 0) {
+                continue;
+            }
+            int toX = columns & 0xffff;
+
+            for (int p = points.firstAt(columns >>> 16, y); p < size && points.getY(p) == y && points.getX(p) <= toX; p++) {
+                if (pointStates[p] == POINT_REMOVED) {
+                    continue;
+                }
+                int r = transform.rhoIndex(points.getX(p), y, t);
+                if (r >= peakR - 1 && r <= peakR + 1) {
+                    if (pointStates[p] == POINT_VOTED) {
+                        transform.votePoint(points, p, -1);
+                    }
+                    pointStates[p] = POINT_REMOVED;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+
+import org.opencv.core.Mat;
+
+import cz.muni.fi.hough.circle.CircleSet;
+
+/**
+ * Coarse-to-fine hough transform for detecting circles with radius in a range. Edge points are downscaled by a factor of 2 or 4,
+ * candidate circles are detected by HoughCircles2D or HoughCircles3D in the downscaled image with scaled radii, and center and
+ * radius of every candidate are refined in a small window of the full resolution image from distances of edge points around
+ * it. Voting in the downscaled image costs about scale * scale times less than in the full resolution one.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class PyramidHoughCircles {
+
+    //Most candidates which are refined, the ones with most votes are taken
+    private static final int MAX_CANDIDATES = 100;
+
+    //Difference between two searched radii in full resolution pixels, the same as in HoughCircles3D
+    private static final int STEP_RADIUS = 10;
+
+    //Most times the window of refined centers is moved
+    private static final int MAX_MOVES = 2;
+
+    //Width of input image
+    private int width;
+
+    //Height of input image
+    private int height;
+
+    //Smallest radius of possible circles to detect
+    private int minRadius;
+
+    //Biggest radius of possible circles to detect
+    private int maxRadius;
+
+    //Minimum distance between two different centers
+    private int distance;
+
+    //How many edge points on a circle should indicate it
+    private int threshold;
+
+    //Downscaling factor
+    private int scale;
+
+    //Edge points of the downscaled image
+    private EdgePointSet coarsePoints = new EdgePointSet();
+
+    //Circles detected in the downscaled image
+    private CircleSet candidates = new CircleSet();
+
+    //Edge points near the circle of the refined candidate
+    private int[] nearX = new int[256];
+    private int[] nearY = new int[256];
+    private int nearSize;
+
+    //Histogram of distances of edge points from the refined center
+    private int[] histogram;
+
+    //Best center, radius and its number of edge points found in the window
+    private int bestA, bestB, bestRadius, bestSupport;
+
+    //Detected circles
+    private CircleSet circles = new CircleSet();
+
+    public PyramidHoughCircles(EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance, int scale) {
+        this(points, threshold, minRadius, maxRadius, distance, scale, null, Accumulator.INT);
+    }
+
+    /**
+     * @param points edge points of the input image
+     * @param threshold how many edge points on a circle should indicate it
+     * @param minRadius
+     * @param maxRadius
+     * @param distance minimum distance between two different centers
+     * @param scale downscaling factor of the image candidates are detected in
+     * @param pool threads to vote with and search for candidates, null to use the calling thread
+     * @param cellBytes size of cells of hough arrays (see Accumulator)
+     */
+    public PyramidHoughCircles(EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance, int scale, VotingPool pool,
+            int cellBytes) {
+        width = points.getWidth();
+        height = points.getHeight();
+        this.minRadius = minRadius;
+        this.maxRadius = maxRadius;
+        this.distance = distance;
+        this.threshold = threshold;
+        this.scale = scale;
+        histogram = new int[maxRadius + 2];
+
+        coarsePoints.downscale(points, scale);
+
+        //Circle has scale times less edge points in the downscaled image and its radius rarely lies exactly on a searched one,
+        //so candidates need only half of them
+        int coarseThreshold = Math.max(1, threshold / (2 * scale));
+        int coarseDistance = Math.max(1, distance / scale);
+        int spread;
+
+        if (minRadius == maxRadius) {
+            int coarseRadius = Math.max(1, (minRadius + scale / 2) / scale);
+            new HoughCircles2D(coarsePoints, coarseThreshold, coarseRadius, coarseDistance, pool, false, cellBytes).findCircles(candidates);
+            spread = 0;
+        } else {
+            int coarseStep = Math.max(1, (STEP_RADIUS + scale / 2) / scale);
+            int coarseMin = Math.max(1, minRadius / scale);
+            int coarseMax = (maxRadius + scale - 1) / scale + 1;
+            new HoughCircles3D(coarsePoints, coarseThreshold, coarseMin, coarseMax, coarseDistance, coarseStep, pool, cellBytes)
+                    .findCircles(candidates);
+
+            //Radius of the circle is at most half of the step from the searched one
+            spread = scale + coarseStep * scale / 2;
+        }
+
+        //Noise votes for bigger circles more, so candidates with most votes relative to their radius are refined
+        long[] order = new long[candidates.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = ((long) -(candidates.getVotes(i) * 1024 / Math.max(1, candidates.getRadius(i))) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        circles.clear();
+        for (int k = 0; k < Math.min(order.length, MAX_CANDIDATES); k++) {
+            int i = (int) order[k];
+            refine(points, candidates.getX(i) * scale + (scale - 1) / 2, candidates.getY(i) * scale + (scale - 1) / 2,
+                    candidates.getRadius(i) * scale, spread);
+        }
+
+        //Refined centers of neighbouring candidates can get close, only the circle with most edge points is kept in distance
+        circles.suppress(distance);
+    }
+
+    /**
+     * Finds the center and the radius within spread pixels of the candidate with most edge points on the circle, relative to
+     * its length. Window of centers within scale pixels is moved while the best center lies on its border, at most MAX_MOVES
+     * times. The circle is detected if there are more edge points on it than threshold.
+     */
+    private void refine(EdgePointSet points, int x, int y, int r, int spread) {
+        int lowR = Math.max(minRadius, r - spread);
+        int highR = Math.min(maxRadius, r + spread);
+        if (lowR > highR) {
+            return;
+        }
+
+        for (int move = 0; move <= MAX_MOVES; move++) {
+            gatherNear(points, x, y, lowR, highR);
+            searchWindow(x, y, lowR, highR);
+            if (Math.abs(bestA - x) < scale && Math.abs(bestB - y) < scale) {
+                break;
+            }
+            x = bestA;
+            y = bestB;
+        }
+
+        if (bestRadius > 0 && bestSupport > threshold) {
+            circles.add(bestA, bestB, bestRadius, bestSupport);
+        }
+    }
+
+    /**
+     * Collects edge points which can lie on a circle with center in the window around x, y and radius from lowR to highR.
+     */
+    private void gatherNear(EdgePointSet points, int x, int y, int lowR, int highR) {
+        int inner = Math.max(0, lowR - scale - 1);
+        int outer = highR + scale + 1;
+        nearSize = 0;
+        int last = points.firstInRow(y + outer + 1);
+        for (int i = points.firstInRow(y - outer); i < last; i++) {
+            int dx = points.getX(i) - x;
+            int dy = points.getY(i) - y;
+            int squared = dx * dx + dy * dy;
+            if (squared >= inner * inner && squared <= outer * outer) {
+                if (nearSize == nearX.length) {
+                    int[] grownX = new int[nearSize * 2];
+                    int[] grownY = new int[nearSize * 2];
+                    System.arraycopy(nearX, 0, grownX, 0, nearSize);
+                    System.arraycopy(nearY, 0, grownY, 0, nearSize);
+                    nearX = grownX;
+                    nearY = grownY;
+                }
+                nearX[nearSize] = points.getX(i);
+                nearY[nearSize] = points.getY(i);
+                nearSize++;
+            }
+        }
+    }
+
+    /**
+     * Finds the best center within scale pixels of x, y and radius from lowR to highR among the collected edge points.
+     */
+    private void searchWindow(int x, int y, int lowR, int highR) {
+        bestRadius = -1;
+        bestSupport = 0;
+        for (int b = Math.max(0, y - scale); b <= Math.min(height - 1, y + scale); b++) {
+            for (int a = Math.max(0, x - scale); a <= Math.min(width - 1, x + scale); a++) {
+
+                //Edge points whose distance from the center rounds to the radius, like the ones the circle stencil votes for
+                for (int d = lowR; d <= highR; d++) {
+                    histogram[d] = 0;
+                }
+                for (int i = 0; i < nearSize; i++) {
+                    int dx = nearX[i] - a;
+                    int dy = nearY[i] - b;
+                    int d = (int) (Math.sqrt(dx * dx + dy * dy) + 0.5);
+                    if (d >= lowR && d <= highR) {
+                        histogram[d]++;
+                    }
+                }
+
+                //Radius relative to its length, so bigger circles are not favoured
+                for (int d = Math.max(lowR, 1); d <= highR; d++) {
+                    if (bestRadius < 0 || (long) histogram[d] * bestRadius > (long) bestSupport * d) {
+                        bestA = a;
+                        bestB = b;
+                        bestRadius = d;
+                        bestSupport = histogram[d];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return detected circles ordered from the one with most edge points, votes of circles are numbers of their edge points
+     */
+    public CircleSet getCircles() {
+        return circles;
+    }
+
+    /**
+     * @return number of candidates detected in the downscaled image
+     */
+    public int getCandidates() {
+        return candidates.size();
+    }
+
+    /**
+     * Draws detected circles to the image.
+     *
+     * @param image
+     */
+    public void drawCircles(Mat image) {
+        circles.draw(image);
+    }
+
+}
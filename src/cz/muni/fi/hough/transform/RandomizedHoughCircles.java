@@ -0,0 +1,323 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.opencv.core.Mat;
+
+import cz.muni.fi.hough.circle.CircleSet;
+
+/**
+ * Randomized hough transform for detecting circles with radius in a range. Triples of edge points are sampled and the circle
+ * through them votes into a sparse accumulator of cells of center and radius, which holds only the cells that were voted for.
+ * When a cell collects enough votes, edge points on its circle are counted, and if there are more of them than threshold, the
+ * circle is detected, its edge points are removed from sampling and the accumulator is cleared. Detection stops after given
+ * number of sampled triples or detected circles.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class RandomizedHoughCircles {
+
+    //Votes of a cell after which its circle is verified
+    private static final int CANDIDATE_VOTES = 3;
+
+    //Size of cells of the accumulator in pixels of center and radius
+    private static final int CELL = 2;
+
+    /**
+     * Hash map from cells of center and radius to their votes and sums of voted values with open addressing, grown as cells are
+     * added, so its size depends only on the number of distinct cells voted for.
+     */
+    private static class SparseAccumulator {
+
+        //Key of empty slot
+        private static final long EMPTY = -1;
+
+        private long[] keys = new long[256];
+        private int[] votes = new int[256];
+        private double[] sumsA = new double[256];
+        private double[] sumsB = new double[256];
+        private double[] sumsR = new double[256];
+        private int size;
+
+        SparseAccumulator() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        /**
+         * Adds vote for the circle into its cell.
+         *
+         * @return slot of the cell
+         */
+        int vote(long key, double a, double b, double r) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            int slot = find(keys, key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+            }
+            votes[slot]++;
+            sumsA[slot] += a;
+            sumsB[slot] += b;
+            sumsR[slot] += r;
+            return slot;
+        }
+
+        /**
+         * @return slot of the key or the empty slot where it belongs
+         */
+        private static int find(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldVotes = votes;
+            double[] oldA = sumsA, oldB = sumsB, oldR = sumsR;
+            int capacity = 2 * oldKeys.length;
+            keys = new long[capacity];
+            votes = new int[capacity];
+            sumsA = new double[capacity];
+            sumsB = new double[capacity];
+            sumsR = new double[capacity];
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = find(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    votes[slot] = oldVotes[i];
+                    sumsA[slot] = oldA[i];
+                    sumsB[slot] = oldB[i];
+                    sumsR[slot] = oldR[i];
+                }
+            }
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(keys, EMPTY);
+                Arrays.fill(votes, 0);
+                Arrays.fill(sumsA, 0);
+                Arrays.fill(sumsB, 0);
+                Arrays.fill(sumsR, 0);
+                size = 0;
+            }
+        }
+    }
+
+    //Width of input image
+    private int width;
+
+    //Height of input image
+    private int height;
+
+    //Smallest radius of possible circles to detect
+    private int minRadius;
+
+    //Biggest radius of possible circles to detect
+    private int maxRadius;
+
+    //Minimum distance between two different centers
+    private int distance;
+
+    //How many edge points on a circle should indicate it
+    private int threshold;
+
+    //Sampled points have to be at least this far from each other, so the circle through them is not too uncertain
+    private int minSpacing;
+
+    private SparseAccumulator accumulator = new SparseAccumulator();
+
+    //Edge points which were removed from sampling, they belong to detected circles
+    private boolean[] removed;
+
+    //Most cells the accumulator held at once, for logging
+    private int maxCells;
+
+    //Number of sampled triples
+    private int iterations;
+
+    //Detected circles
+    private CircleSet circles = new CircleSet();
+
+    public RandomizedHoughCircles(EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance, int maxIterations,
+            int maxCircles) {
+        this(points, threshold, minRadius, maxRadius, distance, maxIterations, maxCircles, new Random());
+    }
+
+    /**
+     * @param points edge points of the input image
+     * @param threshold how many edge points on a circle should indicate it
+     * @param minRadius
+     * @param maxRadius
+     * @param distance minimum distance between two different centers
+     * @param maxIterations most triples of edge points sampled
+     * @param maxCircles detection stops after this many circles are found
+     * @param random source of sampled edge points
+     */
+    public RandomizedHoughCircles(EdgePointSet points, int threshold, int minRadius, int maxRadius, int distance, int maxIterations,
+            int maxCircles, Random random) {
+        width = points.getWidth();
+        height = points.getHeight();
+        this.minRadius = minRadius;
+        this.maxRadius = maxRadius;
+        this.distance = distance;
+        this.threshold = threshold;
+        minSpacing = Math.max(4, minRadius / 2);
+        removed = new boolean[points.size()];
+
+        int size = points.size();
+        if (size < 3) {
+            return;
+        }
+
+        for (iterations = 0; iterations < maxIterations && circles.size() < maxCircles; iterations++) {
+            int i = random.nextInt(size);
+            if (removed[i]) {
+                continue;
+            }
+            int x1 = points.getX(i);
+            int y1 = points.getY(i);
+
+            //Other two points are sampled from rows which can hold the same circle
+            int from = points.firstInRow(y1 - 2 * maxRadius);
+            int to = points.firstInRow(y1 + 2 * maxRadius + 1);
+            int j = from + random.nextInt(to - from);
+            int k = from + random.nextInt(to - from);
+            if (removed[j] || removed[k]) {
+                continue;
+            }
+            int x2 = points.getX(j);
+            int y2 = points.getY(j);
+            int x3 = points.getX(k);
+            int y3 = points.getY(k);
+            if (!spaced(x1, y1, x2, y2) || !spaced(x1, y1, x3, y3) || !spaced(x2, y2, x3, y3)) {
+                continue;
+            }
+
+            //Circle through three points, the center is the intersection of perpendicular bisectors
+            double d = 2.0 * (x1 * (y2 - y3) + x2 * (y3 - y1) + x3 * (y1 - y2));
+            if (d == 0) {
+                continue;
+            }
+            double s1 = x1 * x1 + y1 * y1;
+            double s2 = x2 * x2 + y2 * y2;
+            double s3 = x3 * x3 + y3 * y3;
+            double a = (s1 * (y2 - y3) + s2 * (y3 - y1) + s3 * (y1 - y2)) / d;
+            double b = (s1 * (x3 - x2) + s2 * (x1 - x3) + s3 * (x2 - x1)) / d;
+            double r = Math.sqrt((x1 - a) * (x1 - a) + (y1 - b) * (y1 - b));
+            if (r < minRadius || r > maxRadius || a < 0 || a >= width || b < 0 || b >= height) {
+                continue;
+            }
+
+            long key = (((long) a / CELL) * ((height + CELL - 1) / CELL) + (long) b / CELL) * (maxRadius / CELL + 1) + (long) r / CELL;
+            int slot = accumulator.vote(key, a, b, r);
+            maxCells = Math.max(maxCells, accumulator.size);
+            if (accumulator.votes[slot] == CANDIDATE_VOTES) {
+                verify(points, slot);
+            }
+        }
+    }
+
+    /**
+     * @return true if the points are not closer than minSpacing to each other
+     */
+    private boolean spaced(int x1, int y1, int x2, int y2) {
+        int dx = x1 - x2;
+        int dy = y1 - y2;
+        return dx * dx + dy * dy >= minSpacing * minSpacing;
+    }
+
+    /**
+     * Counts edge points on the mean circle of the cell, detects it if there are enough of them.
+     */
+    private void verify(EdgePointSet points, int slot) {
+        int votes = accumulator.votes[slot];
+        int a = (int) Math.round(accumulator.sumsA[slot] / votes);
+        int b = (int) Math.round(accumulator.sumsB[slot] / votes);
+        double r = accumulator.sumsR[slot] / votes;
+
+        //Cell is not verified again, unless it is voted for after the accumulator is cleared
+        accumulator.votes[slot] = Integer.MIN_VALUE / 2;
+
+        for (int i = 0; i < circles.size(); i++) {
+            int dx = circles.getX(i) - a;
+            int dy = circles.getY(i) - b;
+            if (dx * dx + dy * dy < distance * distance) {
+                return;
+            }
+        }
+
+        //Edge points at most one pixel from the circle
+        double inner = Math.max(0, r - 1) * Math.max(0, r - 1);
+        double outer = (r + 1) * (r + 1);
+        int support = 0;
+        int from = points.firstInRow(b - (int) r - 1);
+        int to = points.firstInRow(b + (int) r + 2);
+        for (int i = from; i < to; i++) {
+            if (removed[i]) {
+                continue;
+            }
+            int dx = points.getX(i) - a;
+            int dy = points.getY(i) - b;
+            int squared = dx * dx + dy * dy;
+            if (squared >= inner && squared <= outer) {
+                support++;
+            }
+        }
+        if (support <= threshold) {
+            return;
+        }
+
+        //Points of the detected circle are not sampled any more
+        for (int i = from; i < to; i++) {
+            int dx = points.getX(i) - a;
+            int dy = points.getY(i) - b;
+            int squared = dx * dx + dy * dy;
+            if (squared >= inner && squared <= outer) {
+                removed[i] = true;
+            }
+        }
+
+        circles.add(a, b, (int) Math.round(r), support);
+        accumulator.clear();
+    }
+
+    /**
+     * @return detected circles in the order they were found, votes of circles are numbers of their edge points
+     */
+    public CircleSet getCircles() {
+        return circles;
+    }
+
+    /**
+     * @return number of sampled triples
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return most cells the accumulator held at once
+     */
+    public int getMaxCells() {
+        return maxCells;
+    }
+
+    /**
+     * Draws detected circles to the image.
+     *
+     * @param image
+     */
+    public void drawCircles(Mat image) {
+        circles.draw(image);
+    }
+
+}
@@ -0,0 +1,110 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pool of worker threads used by the transforms to vote and search hough arrays in parallel. Work is split into slices, every
+ * slice is processed by one thread and the caller waits until all slices are done.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class VotingPool {
+
+    /**
+     * Part of the work processed by one thread.
+     */
+    public interface Task {
+
+        /**
+         * @param slice index of slice to process
+         * @param slices number of slices
+         */
+        void run(int slice, int slices);
+    }
+
+    //Number of threads including the calling one
+    private final int threads;
+
+    //Worker threads, null if work runs only on the calling thread
+    private final ExecutorService executor;
+
+    /**
+     * @param threads number of threads, calling thread included
+     */
+    public VotingPool(int threads) {
+        this.threads = Math.max(1, threads);
+        this.executor = (this.threads > 1) ? Executors.newFixedThreadPool(this.threads - 1) : null;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs task for every slice, first slice on the calling thread and the rest on worker threads. Returns when all slices are done.
+     *
+     * @param slices number of slices
+     * @param task
+     */
+    public void execute(final int slices, final Task task) {
+        if (executor == null || slices < 2) {
+            for (int s = 0; s < slices; s++) {
+                task.run(s, slices);
+            }
+            return;
+        }
+
+        Future<?>[] futures = new Future<?>[slices - 1];
+        for (int s = 1; s < slices; s++) {
+            final int slice = s;
+            futures[s - 1] = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    task.run(slice, slices);
+                }
+            });
+        }
+
+        task.run(0, slices);
+
+        //Wait for the other slices
+        for (int s = 0; s < futures.length; s++) {
+            try {
+                futures[s].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while voting", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Voting failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Runs task once for every thread.
+     *
+     * @param task
+     */
+    public void execute(Task task) {
+        execute(threads, task);
+    }
+
+    /**
+     * @return first index of slice when n items are split into slices
+     */
+    public static int from(int slice, int slices, int n) {
+        return (int) ((long) n * slice / slices);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
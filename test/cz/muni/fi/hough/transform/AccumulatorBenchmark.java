@@ -0,0 +1,98 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+
+import cz.muni.fi.hough.circle.CircleSet;
+
+/**
+ * Measures heap kept by a transform and its voting time for every size of accumulator cells on synthetic edge maps. All
+ * cell sizes are used in the same run, so calls to accumulators are as polymorphic as in the application when the setting is
+ * changed. Lines are measured for the whole hough space and for a lane region. Heap is measured with 16 transforms kept at once,
+ * so it needs -Xmx1g.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class AccumulatorBenchmark {
+
+    private static final int WIDTH = 1280, HEIGHT = 720;
+
+    private static final int FRAMES = 5, WARMUP = 2;
+
+    //Transforms kept at once while heap is measured, so the result is less affected by other objects
+    private static final int KEPT = 16;
+
+    private static final int[] CELLS = {Accumulator.INT, Accumulator.SHORT, Accumulator.BYTE};
+
+    private static final LineRegion LANES = new LineRegion(new int[]{20, 70, 110, 160}, -200, 600);
+
+    /**
+     * Transform built for one frame, the returned object keeps its hough arrays.
+     */
+    private interface Work {
+        Object run(EdgePointSet points, int cellBytes);
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(22);
+        EdgePointSet[] frames = new EdgePointSet[FRAMES];
+        for (int f = 0; f < FRAMES; f++) {
+            byte[] data = EdgeMaps.lines(WIDTH, HEIGHT, 6, 0.005, random);
+            EdgeMaps.addCircles(data, WIDTH, HEIGHT, 4, 20, 99, random);
+            frames[f] = EdgeMaps.points(data, WIDTH, HEIGHT);
+            frames[f].computeOrientations(data, 0, HEIGHT, 180);
+        }
+        System.out.println(WIDTH + "x" + HEIGHT + ", " + frames[0].size() + " edge points per frame");
+
+        measure("HoughLines", frames, new Work() {
+            @Override
+            public Object run(EdgePointSet points, int cellBytes) {
+                return new HoughLines(points, 100, false, 0, null, null, cellBytes);
+            }
+        });
+        measure("HoughLines lane region", frames, new Work() {
+            @Override
+            public Object run(EdgePointSet points, int cellBytes) {
+                return new HoughLines(points, 100, false, 0, LANES, null, cellBytes);
+            }
+        });
+        measure("HoughCirclesGradient r=20..99", frames, new Work() {
+            @Override
+            public Object run(EdgePointSet points, int cellBytes) {
+                return new HoughCirclesGradient(points, 100, 20, 99, 20, null, cellBytes);
+            }
+        });
+        measure("HoughCircles3D r=20..99", frames, new Work() {
+            @Override
+            public Object run(EdgePointSet points, int cellBytes) {
+                HoughCircles3D transform = new HoughCircles3D(points, 150, 20, 99, 20, null, cellBytes);
+                transform.findCircles(new CircleSet());
+                return transform;
+            }
+        });
+    }
+
+    private static void measure(String name, EdgePointSet[] frames, Work work) {
+        System.out.println(name);
+        for (int f = 0; f < WARMUP; f++) {
+            for (int cellBytes : CELLS) {
+                work.run(frames[f], cellBytes);
+            }
+        }
+        for (int cellBytes : CELLS) {
+            long start = System.nanoTime();
+            for (int f = 0; f < frames.length; f++) {
+                work.run(frames[f], cellBytes);
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / frames.length;
+
+            Object[] kept = new Object[KEPT];
+            long before = CircleBenchmark.usedHeap();
+            for (int k = 0; k < KEPT; k++) {
+                kept[k] = work.run(frames[0], cellBytes);
+            }
+            long retained = (CircleBenchmark.usedHeap() - before) / KEPT;
+            System.out.println(String.format("  %d byte cells: %8.2f ms per frame, retained %6.2f MB", cellBytes, millis,
+                    retained / 1048576.0));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+
+import cz.muni.fi.hough.circle.CircleSet;
+
+/**
+ * Measures how HoughCircles3D scales with the range of searched radii and with the number of threads of VotingPool on synthetic
+ * 640x480 edge maps with circles and noise. For every range prints the heap the transform keeps after the search, which is its
+ * hough array and the buffers of its peak finder, and for 1 to N threads milliseconds per frame of voting and of the peak search
+ * and speedup of both against one thread. N is the first argument or the number of processors.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class CircleBenchmark {
+
+    private static final int WIDTH = 640, HEIGHT = 480;
+
+    private static final int FRAMES = 5, WARMUP = 2;
+
+    private static final int MIN_RADIUS = 20, DISTANCE = 20;
+
+    private static final int[] MAX_RADII = {40, 60, 80, 120};
+
+    public static void main(String[] args) {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(19);
+        EdgePointSet[] frames = new EdgePointSet[FRAMES];
+        for (int f = 0; f < FRAMES; f++) {
+            byte[] data = new byte[WIDTH * HEIGHT];
+            EdgeMaps.addCircles(data, WIDTH, HEIGHT, 4, MIN_RADIUS, 80, random);
+            EdgeMaps.addNoise(data, 0.01, random);
+            frames[f] = EdgeMaps.points(data, WIDTH, HEIGHT);
+        }
+        System.out.println(WIDTH + "x" + HEIGHT + ", " + frames[0].size() + " edge points per frame");
+
+        CircleSet circles = new CircleSet();
+        for (int maxRadius : MAX_RADII) {
+            long before = usedHeap();
+            HoughCircles3D transform = new HoughCircles3D(frames[0], 100, MIN_RADIUS, maxRadius, DISTANCE, null);
+            circles.clear();
+            transform.findCircles(circles);
+            long retained = usedHeap() - before;
+            System.out.println(String.format("r=%d..%d: retained %6.1f MB, %d circles", MIN_RADIUS, maxRadius, retained / 1048576.0,
+                    circles.size()));
+
+            double singleVote = 0, singleFind = 0;
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                VotingPool pool = (threads == 1) ? null : new VotingPool(threads);
+                try {
+                    long vote = 0, find = 0;
+                    for (int f = -WARMUP; f < FRAMES; f++) {
+                        EdgePointSet points = frames[(f + FRAMES) % FRAMES];
+                        long start = System.nanoTime();
+                        transform = new HoughCircles3D(points, 100, MIN_RADIUS, maxRadius, DISTANCE, pool);
+                        long voted = System.nanoTime();
+                        circles.clear();
+                        transform.findCircles(circles);
+                        if (f >= 0) {
+                            vote += voted - start;
+                            find += System.nanoTime() - voted;
+                        }
+                    }
+
+                    double voteMillis = vote / 1e6 / FRAMES, findMillis = find / 1e6 / FRAMES;
+                    if (threads == 1) {
+                        singleVote = voteMillis;
+                        singleFind = findMillis;
+                    }
+                    System.out.println(String.format("  %d threads: vote %8.2f ms, speedup %.2f, find %8.2f ms, speedup %.2f", threads,
+                            voteMillis, singleVote / voteMillis, findMillis, singleFind / findMillis));
+                } finally {
+                    if (pool != null) {
+                        pool.shutdown();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return bytes of heap in use after garbage collection
+     */
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
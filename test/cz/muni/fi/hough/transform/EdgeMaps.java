@@ -0,0 +1,103 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+
+/**
+ * Synthetic binary edge maps and checks shared by the tests. Tests run on a plain JVM, every test class has a main method which
+ * throws AssertionError on the first failed check.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+final class EdgeMaps {
+
+    private EdgeMaps() {
+    }
+
+    /**
+     * Creates an edge map with straight lines between random points on the border of the image and random noise pixels.
+     *
+     * @param width
+     * @param height
+     * @param lines number of lines
+     * @param noise probability of a noise pixel
+     * @param random
+     * @return one byte per pixel, 0 for no edge
+     */
+    static byte[] lines(int width, int height, int lines, double noise, Random random) {
+        byte[] data = new byte[width * height];
+        for (int l = 0; l < lines; l++) {
+            drawLine(data, width, height, random.nextInt(width), 0, random.nextInt(width), height - 1);
+        }
+        addNoise(data, noise, random);
+        return data;
+    }
+
+    /**
+     * Draws a straight line of edge pixels.
+     */
+    static void drawLine(byte[] data, int width, int height, int x0, int y0, int x1, int y1) {
+        int steps = Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0));
+        for (int s = 0; s <= steps; s++) {
+            int x = x0 + (int) Math.round((x1 - x0) * (double) s / Math.max(1, steps));
+            int y = y0 + (int) Math.round((y1 - y0) * (double) s / Math.max(1, steps));
+            if (x >= 0 && x < width && y >= 0 && y < height) {
+                data[y * width + x] = (byte) 255;
+            }
+        }
+    }
+
+    /**
+     * Draws circles with random centers and radii between minRadius and maxRadius.
+     */
+    static void addCircles(byte[] data, int width, int height, int circles, int minRadius, int maxRadius, Random random) {
+        for (int c = 0; c < circles; c++) {
+            int a = random.nextInt(width);
+            int b = random.nextInt(height);
+            int r = minRadius + random.nextInt(maxRadius - minRadius + 1);
+            for (int s = 0; s < 8 * r; s++) {
+                int x = a + (int) Math.round(r * Math.cos(s * Math.PI / (4 * r)));
+                int y = b + (int) Math.round(r * Math.sin(s * Math.PI / (4 * r)));
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    data[y * width + x] = (byte) 255;
+                }
+            }
+        }
+    }
+
+    /**
+     * Turns random pixels into edges.
+     */
+    static void addNoise(byte[] data, double probability, Random random) {
+        for (int i = 0; i < data.length; i++) {
+            if (random.nextDouble() < probability) {
+                data[i] = (byte) 255;
+            }
+        }
+    }
+
+    /**
+     * Changes the edge map into the next frame: every pixel turns from edge to no edge or back with the given probability.
+     */
+    static void flicker(byte[] data, double probability, Random random) {
+        for (int i = 0; i < data.length; i++) {
+            if (random.nextDouble() < probability) {
+                data[i] = (byte) ((data[i] == 0) ? 255 : 0);
+            }
+        }
+    }
+
+    /**
+     * @return edge points of the whole edge map
+     */
+    static EdgePointSet points(byte[] data, int width, int height) {
+        EdgePointSet points = new EdgePointSet();
+        points.extract(data, width, height, 1, 0, height, 0, width);
+        return points;
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that transforms fed with an EdgePointSet build the same hough arrays as the per-pixel scans of the image they replaced,
+ * and that a downscaled set holds every edge pixel of the downscaled image once.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class EdgePointSetTest {
+
+    private static final int WIDTH = 160, HEIGHT = 120;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        EdgePointSet downscaled = new EdgePointSet();
+        for (int frame = 0; frame < 5; frame++) {
+            byte[] data = EdgeMaps.lines(WIDTH, HEIGHT, 4, 0.02, random);
+            lineTransformMatchesPixelScan(data);
+            houghLinesMatchesPixelScan(data);
+
+            //The downscaled set is reused, as the pyramid detector does between frames
+            downscaleMatchesPixelScan(data, downscaled, 2 + frame % 2);
+        }
+        System.out.println("EdgePointSetTest passed");
+    }
+
+    /**
+     * HoughLineTransform used to add every non-black pixel with addPoint, column by column.
+     */
+    private static void lineTransformMatchesPixelScan(byte[] data) {
+        HoughLineTransform expected = new HoughLineTransform(WIDTH, HEIGHT);
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                if (data[y * WIDTH + x] != 0) {
+                    expected.addPoint(x, y);
+                }
+            }
+        }
+
+        HoughLineTransform actual = new HoughLineTransform(WIDTH, HEIGHT);
+        actual.addPoints(EdgeMaps.points(data, WIDTH, HEIGHT));
+
+        for (int t = 0; t < 180; t++) {
+            for (int r = 0; r < expected.getRhoSteps(); r++) {
+                EdgeMaps.check(expected.getVotes(t, r) == actual.getVotes(t, r), "HoughLineTransform differs at theta " + t + ", r " + r);
+            }
+        }
+    }
+
+    /**
+     * HoughLines used to vote for every non-black pixel of the bottom half of the image with rho computed in double precision.
+     */
+    private static void houghLinesMatchesPixelScan(byte[] data) {
+        int diagonal = (int) Math.sqrt(WIDTH * WIDTH + HEIGHT * HEIGHT);
+        int[][] expected = new int[180][diagonal * 2];
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = HEIGHT / 2; y < HEIGHT; y++) {
+                if (data[y * WIDTH + x] != 0) {
+                    for (int t = 0; t < 180; t++) {
+                        double theta = t * (Math.PI / 180);
+                        expected[t][(int) (x * Math.cos(theta) + y * Math.sin(theta)) + diagonal]++;
+                    }
+                }
+            }
+        }
+
+        EdgePointSet bottom = new EdgePointSet();
+        byte[] half = new byte[WIDTH * (HEIGHT - HEIGHT / 2)];
+        System.arraycopy(data, HEIGHT / 2 * WIDTH, half, 0, half.length);
+        bottom.extract(half, WIDTH, HEIGHT, 1, HEIGHT / 2, HEIGHT, 0, WIDTH);
+        HoughLines actual = new HoughLines(bottom, Integer.MAX_VALUE);
+
+        EdgeMaps.check(actual.getRhoSteps() == diagonal * 2, "HoughLines has " + actual.getRhoSteps() + " rho steps");
+        for (int t = 0; t < 180; t++) {
+            for (int r = 0; r < diagonal * 2; r++) {
+                EdgeMaps.check(expected[t][r] == actual.getVotes(t, r), "HoughLines differs at theta " + t + ", rho " + r);
+            }
+        }
+    }
+
+    /**
+     * Pixel of the downscaled image is an edge if any pixel it covers is one.
+     */
+    private static void downscaleMatchesPixelScan(byte[] data, EdgePointSet downscaled, int scale) {
+        int width = (WIDTH + scale - 1) / scale, height = (HEIGHT + scale - 1) / scale;
+        byte[] expected = new byte[width * height];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (data[y * WIDTH + x] != 0) {
+                    expected[(y / scale) * width + x / scale] = 1;
+                }
+            }
+        }
+
+        downscaled.downscale(EdgeMaps.points(data, WIDTH, HEIGHT), scale);
+        EdgeMaps.check(downscaled.getWidth() == width && downscaled.getHeight() == height, "downscaled size differs");
+        byte[] actual = new byte[width * height];
+        for (int i = 0; i < downscaled.size(); i++) {
+            int cell = downscaled.getY(i) * width + downscaled.getX(i);
+            EdgeMaps.check(actual[cell] == 0, "downscaled point " + i + " is repeated");
+            actual[cell] = 1;
+        }
+        EdgeMaps.check(Arrays.equals(expected, actual), "downscaled points differ at scale " + scale);
+    }
+}
@@ -0,0 +1,160 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the fixed point voting kernel finds the same peaks as the double one, at most one rho bin away, and that voting
+ * within the gradient window finds the peaks of voting for all thetas, at most one theta step and one rho bin away.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class FixedPointVotingTest {
+
+    private static final int WIDTH = 320, HEIGHT = 240;
+
+    private static final int THRESHOLD = 80;
+
+    public static void main(String[] args) {
+        Random random = new Random(3);
+        for (int frame = 0; frame < 10; frame++) {
+            byte[] data = EdgeMaps.lines(WIDTH, HEIGHT, 3, 0.005, random);
+            EdgePointSet points = EdgeMaps.points(data, WIDTH, HEIGHT);
+            lineTransformPeaksMatch(points);
+            houghLinesPeaksMatch(points);
+        }
+        for (int frame = 0; frame < 10; frame++) {
+            gradientWindowPeaksMatch(random);
+        }
+        System.out.println("FixedPointVotingTest passed");
+    }
+
+    private static void lineTransformPeaksMatch(EdgePointSet points) {
+        HoughLineTransform transform = new HoughLineTransform(WIDTH, HEIGHT);
+        transform.addPoints(points);
+        List<int[]> expected = peaks(votes(transform));
+
+        transform.reset();
+        transform.setFixedPoint(true);
+        transform.addPoints(points);
+        List<int[]> actual = peaks(votes(transform));
+
+        EdgeMaps.check(!expected.isEmpty(), "no lines found");
+        EdgeMaps.check(covers(actual, expected, 0), "line of double voting not found by fixed point voting");
+        EdgeMaps.check(covers(expected, actual, 0), "line of fixed point voting not found by double voting");
+    }
+
+    private static void houghLinesPeaksMatch(EdgePointSet points) {
+        List<int[]> expected = peaks(votes(new HoughLines(points, THRESHOLD)));
+        List<int[]> actual = peaks(votes(new HoughLines(points, THRESHOLD, true, 0, null)));
+
+        EdgeMaps.check(!expected.isEmpty(), "no lines found");
+        EdgeMaps.check(covers(actual, expected, 0), "HoughLines line of double voting not found by fixed point voting");
+        EdgeMaps.check(covers(expected, actual, 0), "HoughLines line of fixed point voting not found by double voting");
+    }
+
+    /**
+     * Edges between smooth steps of a greyscale image have the gradient of the image as their normal, so they vote in the window
+     * around it.
+     */
+    private static void gradientWindowPeaksMatch(Random random) {
+        byte[] gray = new byte[WIDTH * HEIGHT];
+        byte[] edges = new byte[WIDTH * HEIGHT];
+        for (int l = 0; l < 3; l++) {
+            double theta = random.nextDouble() * Math.PI;
+            double rho = (random.nextDouble() - 0.5) * HEIGHT / 2;
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+
+                    //Step rises over two pixels, edge pixels are the ones closest to the line
+                    double distance = (x - WIDTH / 2) * Math.cos(theta) + (y - HEIGHT / 2) * Math.sin(theta) - rho;
+                    gray[y * WIDTH + x] += (byte) (60 * Math.max(0, Math.min(1, distance / 2 + 0.5)));
+                    if (Math.abs(distance) <= 0.5) {
+                        edges[y * WIDTH + x] = (byte) 255;
+                    }
+                }
+            }
+        }
+        EdgePointSet points = EdgeMaps.points(edges, WIDTH, HEIGHT);
+
+        HoughLineTransform transform = new HoughLineTransform(WIDTH, HEIGHT);
+        transform.addPoints(points);
+        List<int[]> expected = peaks(votes(transform));
+
+        points.computeOrientations(gray, 0, HEIGHT, 180);
+        transform.reset();
+        transform.setGradientWindow(5);
+        transform.addPoints(points);
+        List<int[]> actual = peaks(votes(transform));
+
+        EdgeMaps.check(!expected.isEmpty(), "no lines found");
+        EdgeMaps.check(covers(actual, expected, 1), "line of full voting not found by voting within the gradient window");
+        EdgeMaps.check(covers(expected, actual, 1), "line of voting within the gradient window not found by full voting");
+    }
+
+    static int[][] votes(HoughLineTransform transform) {
+        int[][] array = new int[180][transform.getRhoSteps()];
+        for (int t = 0; t < 180; t++) {
+            for (int r = 0; r < array[t].length; r++) {
+                array[t][r] = transform.getVotes(t, r);
+            }
+        }
+        return array;
+    }
+
+    static int[][] votes(HoughLines lines) {
+        int[][] array = new int[180][lines.getRhoSteps()];
+        for (int t = 0; t < 180; t++) {
+            for (int r = 0; r < array[t].length; r++) {
+                array[t][r] = lines.getVotes(t, r);
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Finds cells above threshold which are maxima of their neighbourhood of 4 cells, theta wraps around as in getLines.
+     *
+     * @return theta step and index of r of every peak
+     */
+    static List<int[]> peaks(int[][] array) {
+        List<int[]> peaks = new ArrayList<int[]>();
+        for (int t = 0; t < array.length; t++) {
+            loop:
+            for (int r = 4; r < array[t].length - 4; r++) {
+                if (array[t][r] <= THRESHOLD) {
+                    continue;
+                }
+                for (int dt = -4; dt <= 4; dt++) {
+                    for (int dr = -4; dr <= 4; dr++) {
+                        if (array[(t + dt + array.length) % array.length][r + dr] > array[t][r]) {
+                            continue loop;
+                        }
+                    }
+                }
+                peaks.add(new int[] {t, r});
+            }
+        }
+        return peaks;
+    }
+
+    /**
+     * @return true if every peak of expected has a peak of actual at most thetaSteps steps of theta and one bin of r away
+     */
+    static boolean covers(List<int[]> actual, List<int[]> expected, int thetaSteps) {
+        for (int[] e : expected) {
+            boolean found = false;
+            for (int[] a : actual) {
+                int dt = Math.abs(a[0] - e[0]);
+                if (Math.min(dt, 180 - dt) <= thetaSteps && Math.abs(a[1] - e[1]) <= 1) {
+                    found = true;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
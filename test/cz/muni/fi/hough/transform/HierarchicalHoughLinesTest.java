@@ -0,0 +1,56 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+
+import cz.muni.fi.hough.line.LineSet;
+
+/**
+ * Checks that the coarse-to-fine transform finds the lines of the full resolution transform, at most one theta step and one r
+ * step away, with the same number of votes.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class HierarchicalHoughLinesTest {
+
+    private static final int WIDTH = 640, HEIGHT = 480;
+
+    private static final int THRESHOLD = 150;
+
+    public static void main(String[] args) {
+        Random random = new Random(8);
+        HoughLineTransform full = new HoughLineTransform(WIDTH, HEIGHT);
+        HierarchicalHoughLines hierarchical = new HierarchicalHoughLines(WIDTH, HEIGHT);
+        LineSet expected = new LineSet(10);
+        LineSet actual = new LineSet(10);
+
+        for (int frame = 0; frame < 20; frame++) {
+            byte[] data = EdgeMaps.lines(WIDTH, HEIGHT, 4, 0.01, random);
+            EdgePointSet points = EdgeMaps.points(data, WIDTH, HEIGHT);
+
+            full.reset();
+            full.addPoints(points);
+            full.getLines(THRESHOLD, expected);
+            hierarchical.getLines(points, THRESHOLD, actual);
+
+            EdgeMaps.check(expected.size() > 0, "no lines found");
+            for (int i = 0; i < expected.size(); i++) {
+                EdgeMaps.check(find(actual, expected.getTheta(i), expected.getRho(i), expected.getVotes(i)),
+                        "line " + Math.round(Math.toDegrees(expected.getTheta(i))) + " deg, r " + expected.getRho(i) + " with "
+                                + expected.getVotes(i) + " votes not found in frame " + frame);
+            }
+        }
+        System.out.println("HierarchicalHoughLinesTest passed");
+    }
+
+    /**
+     * @return true if the set has a line at most one step of theta and r away with the same votes
+     */
+    private static boolean find(LineSet lines, double theta, double rho, int votes) {
+        for (int i = 0; i < lines.size(); i++) {
+            if (Math.abs(lines.getTheta(i) - theta) < 1.5 * Math.PI / 180 && Math.abs(lines.getRho(i) - rho) <= 1 && lines.getVotes(i) == votes) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+
+/**
+ * Checks that after every frame added incrementally the hough array holds the same votes as a fresh transform which added all
+ * points of the frame, also when the kernel, the gradient window, the region or the threads change between frames.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class IncrementalVotingTest {
+
+    private static final int WIDTH = 160, HEIGHT = 120;
+
+    private static final LineRegion REGION = new LineRegion(new int[]{10, 70, 110, 170}, -60, 80);
+
+    public static void main(String[] args) {
+        Random random = new Random(13);
+        byte[] data = EdgeMaps.lines(WIDTH, HEIGHT, 3, 0.02, random);
+        HoughLineTransform incremental = new HoughLineTransform(WIDTH, HEIGHT);
+        VotingPool pool = new VotingPool(3);
+        try {
+
+            for (int frame = 0; frame < 40; frame++) {
+                EdgeMaps.flicker(data, (frame % 10 == 5) ? 0.2 : 0.01, random);
+                EdgePointSet points = EdgeMaps.points(data, WIDTH, HEIGHT);
+
+                //Settings change every few frames, mostly not at the same frame, the orientations are known in half of the frames
+                boolean fixedPoint = (frame / 5) % 2 == 1;
+                int window = (((frame + 3) / 7) % 2 == 1) ? 5 : 0;
+                LineRegion region = (((frame + 1) / 9) % 2 == 1) ? REGION : null;
+                if ((frame / 3) % 2 == 1) {
+                    points.computeOrientations(data, 0, HEIGHT, 180);
+                }
+                incremental.setFixedPoint(fixedPoint);
+                incremental.setGradientWindow(window);
+                incremental.setRegion(region);
+                incremental.setPool((frame % 7 < 3) ? pool : null, true);
+                incremental.addPointsIncremental(points);
+
+                HoughLineTransform full = new HoughLineTransform(WIDTH, HEIGHT);
+                full.setFixedPoint(fixedPoint);
+                full.setGradientWindow(window);
+                full.setRegion(region);
+                full.addPoints(points);
+
+                for (int t = 0; t < 180; t++) {
+                    for (int r = 0; r < full.getRhoSteps(); r++) {
+                        EdgeMaps.check(incremental.getVotes(t, r) == full.getVotes(t, r), "frame " + frame + " differs at theta " + t + ", r " + r);
+                    }
+                }
+            }
+        } finally {
+
+            //Worker threads would keep the test running after a failed check
+            pool.shutdown();
+        }
+        System.out.println("IncrementalVotingTest passed");
+    }
+}
@@ -0,0 +1,100 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+
+/**
+ * Measures the native kernels against the Java ones on one thread on synthetic 640x480 edge maps with lines, circles and noise.
+ * Prints milliseconds per frame of both and speedup of the native kernel. Needs the library built with jni/Makefile on
+ * java.library.path.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class NativeBenchmark {
+
+    private static final int WIDTH = 640, HEIGHT = 480;
+
+    private static final int FRAMES = 10, WARMUP = 3;
+
+    private static final LineRegion REGION = new LineRegion(new int[]{10, 70, 110, 170}, -240, 320);
+
+    /**
+     * Work measured for one frame.
+     */
+    private interface Work {
+        void run(EdgePointSet points, boolean useNative);
+    }
+
+    public static void main(String[] args) {
+        if (!NativeKernels.load()) {
+            System.out.println("NativeBenchmark skipped, native library not loaded");
+            return;
+        }
+
+        Random random = new Random(14);
+        EdgePointSet[] frames = new EdgePointSet[FRAMES];
+        for (int f = 0; f < FRAMES; f++) {
+            byte[] data = EdgeMaps.lines(WIDTH, HEIGHT, 6, 0.01, random);
+            EdgeMaps.addCircles(data, WIDTH, HEIGHT, 4, 20, 80, random);
+            frames[f] = EdgeMaps.points(data, WIDTH, HEIGHT);
+        }
+        System.out.println(WIDTH + "x" + HEIGHT + ", " + frames[0].size() + " edge points per frame");
+
+        final HoughLineTransform transform = new HoughLineTransform(WIDTH, HEIGHT);
+        measure("HoughLineTransform double", frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, boolean useNative) {
+                voteLines(transform, points, false, null, useNative);
+            }
+        });
+        measure("HoughLineTransform fixed point", frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, boolean useNative) {
+                voteLines(transform, points, true, null, useNative);
+            }
+        });
+        measure("HoughLineTransform fixed point with region", frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, boolean useNative) {
+                voteLines(transform, points, true, REGION, useNative);
+            }
+        });
+        measure("HoughLineTransform voting and peaks", frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, boolean useNative) {
+                voteLines(transform, points, true, null, useNative);
+                transform.getLines(100);
+            }
+        });
+        measure("HoughCircles2D r=40", frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, boolean useNative) {
+                new HoughCircles2D(points, 100, 40, 20, null, useNative);
+            }
+        });
+    }
+
+    private static void voteLines(HoughLineTransform transform, EdgePointSet points, boolean fixedPoint, LineRegion region, boolean useNative) {
+        transform.reset();
+        transform.setFixedPoint(fixedPoint);
+        transform.setRegion(region);
+        transform.setNative(useNative);
+        transform.addPoints(points);
+    }
+
+    private static void measure(String name, EdgePointSet[] frames, Work work) {
+        double java = measure(frames, work, false);
+        double nativeMillis = measure(frames, work, true);
+        System.out.println(String.format("%s: Java %8.2f ms, native %8.2f ms per frame, speedup %.2f", name, java, nativeMillis, java / nativeMillis));
+    }
+
+    private static double measure(EdgePointSet[] frames, Work work, boolean useNative) {
+        for (int f = 0; f < WARMUP; f++) {
+            work.run(frames[f], useNative);
+        }
+        long start = System.nanoTime();
+        for (int f = 0; f < frames.length; f++) {
+            work.run(frames[f], useNative);
+        }
+        return (System.nanoTime() - start) / 1e6 / frames.length;
+    }
+}
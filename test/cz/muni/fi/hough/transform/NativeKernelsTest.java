@@ -0,0 +1,138 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+import java.util.Vector;
+
+import cz.muni.fi.hough.line.HoughLine;
+
+/**
+ * Checks that the native kernels vote and find peaks the same as the Java ones. Line kernels are checked with both double and
+ * fixed point tables, with and without a region, on one thread and split between threads, peaks also on arrays with rows left out
+ * by a region. The circle kernel is checked when threads vote into their own rows of the same array and when the array is reused
+ * for the next frame. Needs the library built with jni/Makefile on java.library.path, without it the test only reports that it
+ * was skipped.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class NativeKernelsTest {
+
+    private static final int WIDTH = 320, HEIGHT = 240;
+
+    private static final int LINE_THRESHOLD = 40;
+
+    private static final LineRegion REGION = new LineRegion(new int[]{10, 70, 110, 170}, -120, 160);
+
+    public static void main(String[] args) {
+        if (!NativeKernels.load()) {
+            System.out.println("NativeKernelsTest skipped, native library not loaded");
+            return;
+        }
+        Random random = new Random(14);
+        VotingPool pool = new VotingPool(4);
+        try {
+            linesMatch(random, pool);
+            peaksMatch(random);
+            circlesMatch(random, pool);
+        } finally {
+
+            //Worker threads would keep the test running after a failed check
+            pool.shutdown();
+        }
+        System.out.println("NativeKernelsTest passed");
+    }
+
+    private static void linesMatch(Random random, VotingPool pool) {
+        for (int frame = 0; frame < 8; frame++) {
+            byte[] data = EdgeMaps.lines(WIDTH, HEIGHT, 4, 0.02, random);
+            EdgePointSet points = EdgeMaps.points(data, WIDTH, HEIGHT);
+
+            //Every combination of kernel, region and threads
+            boolean fixedPoint = frame % 2 == 1;
+            LineRegion region = ((frame / 2) % 2 == 1) ? REGION : null;
+            VotingPool threads = ((frame / 4) % 2 == 1) ? pool : null;
+            HoughLineTransform expected = lineTransform(fixedPoint, region, threads, false);
+            HoughLineTransform actual = lineTransform(fixedPoint, region, threads, true);
+            expected.addPoints(points);
+            actual.addPoints(points);
+
+            String name = "frame " + frame + (fixedPoint ? " fixed point" : " double") + (region != null ? " with region" : "");
+            for (int t = 0; t < 180; t++) {
+                for (int r = 0; r < expected.getRhoSteps(); r++) {
+                    EdgeMaps.check(expected.getVotes(t, r) == actual.getVotes(t, r), name + " differs at theta " + t + ", r " + r);
+                }
+            }
+
+            Vector<HoughLine> expectedLines = expected.getLines(LINE_THRESHOLD);
+            Vector<HoughLine> actualLines = actual.getLines(LINE_THRESHOLD);
+            EdgeMaps.check(!expectedLines.isEmpty(), name + " found no lines");
+            EdgeMaps.check(expectedLines.size() == actualLines.size(), name + " found " + actualLines.size() + " lines instead of " + expectedLines.size());
+            for (int i = 0; i < expectedLines.size(); i++) {
+                HoughLine e = expectedLines.get(i), a = actualLines.get(i);
+                EdgeMaps.check(e.getTheta() == a.getTheta() && e.getR() == a.getR(), name + " line " + i + " differs");
+            }
+        }
+    }
+
+    private static HoughLineTransform lineTransform(boolean fixedPoint, LineRegion region, VotingPool threads, boolean useNative) {
+        HoughLineTransform transform = new HoughLineTransform(WIDTH, HEIGHT);
+        transform.setFixedPoint(fixedPoint);
+        transform.setRegion(region);
+        transform.setPool(threads, false);
+        transform.setNative(useNative);
+        return transform;
+    }
+
+    private static void peaksMatch(Random random) {
+        PeakFinder expected = new PeakFinder();
+        PeakFinder actual = new PeakFinder();
+        actual.setNative(true);
+        for (int round = 0; round < 8; round++) {
+
+            //Flat random votes have many plateaus, so equal neighbours are compared as well
+            int[][] array = new int[90][70];
+            for (int t = 0; t < array.length; t++) {
+                for (int c = 0; c < array[t].length; c++) {
+                    array[t][c] = random.nextInt(12);
+                }
+            }
+
+            //Rows outside of a region are null
+            if (round % 2 == 1) {
+                for (int t = 20; t < 60; t++) {
+                    array[t] = null;
+                }
+            }
+            boolean wrapRows = (round / 2) % 2 == 1;
+
+            int count = expected.find(array, 8, 2, 3, wrapRows);
+            String name = "round " + round;
+            EdgeMaps.check(count > 0, name + " found no peaks");
+            EdgeMaps.check(actual.find(array, 8, 2, 3, wrapRows) == count, name + " found " + actual.size() + " peaks instead of " + count);
+            for (int i = 0; i < count; i++) {
+                EdgeMaps.check(expected.getRow(i) == actual.getRow(i) && expected.getColumn(i) == actual.getColumn(i)
+                        && expected.getValue(i) == actual.getValue(i), name + " peak " + i + " differs");
+            }
+        }
+    }
+
+    private static void circlesMatch(Random random, VotingPool pool) {
+        int[] votes = null;
+        for (int frame = 0; frame < 6; frame++) {
+            byte[] data = new byte[WIDTH * HEIGHT];
+            EdgeMaps.addCircles(data, WIDTH, HEIGHT, 4, 20, 60, random);
+            EdgeMaps.addNoise(data, (frame % 2 == 0) ? 0.01 : 0.05, random);
+            EdgePointSet points = EdgeMaps.points(data, WIDTH, HEIGHT);
+
+            //Every other frame votes with one thread, so rows of the reused array are written by different slices
+            VotingPool threads = (frame % 2 == 0) ? pool : null;
+            HoughCircles2D expected = new HoughCircles2D(points, 100, 40, 10, threads, false);
+            HoughCircles2D actual = new HoughCircles2D(points, 100, 40, 10, threads, true, Accumulator.INT, votes);
+            votes = actual.getNativeVotes();
+            for (int a = 0; a < WIDTH; a++) {
+                for (int b = 0; b < HEIGHT; b++) {
+                    EdgeMaps.check(expected.getVotes(a, b) == actual.getVotes(a, b), "frame " + frame + " differs at a " + a + ", b " + b);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package cz.muni.fi.hough.transform;
+
+import java.util.Random;
+
+/**
+ * Measures how voting of the transforms scales with the number of threads of VotingPool on synthetic 640x480 edge maps with
+ * lines, circles and noise. Prints milliseconds per frame and speedup against one thread for 1 to N threads, N is the first
+ * argument or the number of processors.
+ *
+ * @author Jakub Medveck-Heretik
+ */
+public class VotingBenchmark {
+
+    private static final int WIDTH = 640, HEIGHT = 480;
+
+    private static final int FRAMES = 10, WARMUP = 3;
+
+    /**
+     * Work measured for one frame.
+     */
+    private interface Work {
+        void run(EdgePointSet points, VotingPool pool);
+    }
+
+    public static void main(String[] args) {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(4);
+        EdgePointSet[] frames = new EdgePointSet[FRAMES];
+        for (int f = 0; f < FRAMES; f++) {
+            byte[] data = EdgeMaps.lines(WIDTH, HEIGHT, 6, 0.01, random);
+            EdgeMaps.addCircles(data, WIDTH, HEIGHT, 4, 20, 80, random);
+            frames[f] = EdgeMaps.points(data, WIDTH, HEIGHT);
+        }
+        System.out.println(WIDTH + "x" + HEIGHT + ", " + frames[0].size() + " edge points per frame");
+
+        final HoughLineTransform transform = new HoughLineTransform(WIDTH, HEIGHT);
+        measure("HoughLineTransform by points", maxThreads, frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, VotingPool pool) {
+                transform.reset();
+                transform.setPool(pool, false);
+                transform.addPoints(points);
+            }
+        });
+        measure("HoughLineTransform by theta", maxThreads, frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, VotingPool pool) {
+                transform.reset();
+                transform.setPool(pool, true);
+                transform.addPoints(points);
+            }
+        });
+        measure("HoughLines", maxThreads, frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, VotingPool pool) {
+                new HoughLines(points, 100, false, 0, pool);
+            }
+        });
+        measure("HoughCircles2D r=40", maxThreads, frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, VotingPool pool) {
+                new HoughCircles2D(points, 100, 40, 20, pool);
+            }
+        });
+        measure("HoughCircles3D r=20..80", maxThreads, frames, new Work() {
+            @Override
+            public void run(EdgePointSet points, VotingPool pool) {
+                new HoughCircles3D(points, 100, 20, 80, 20, pool);
+            }
+        });
+    }
+
+    private static void measure(String name, int maxThreads, EdgePointSet[] frames, Work work) {
+        System.out.println(name);
+        double single = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            VotingPool pool = (threads == 1) ? null : new VotingPool(threads);
+            for (int f = 0; f < WARMUP; f++) {
+                work.run(frames[f], pool);
+            }
+            long start = System.nanoTime();
+            for (int f = 0; f < frames.length; f++) {
+                work.run(frames[f], pool);
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / frames.length;
+            if (threads == 1) {
+                single = millis;
+            }
+            System.out.println(String.format("  %d threads: %8.2f ms per frame, speedup %.2f", threads, millis, single / millis));
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+}